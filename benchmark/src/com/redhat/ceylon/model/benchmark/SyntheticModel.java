@@ -0,0 +1,329 @@
+package com.redhat.ceylon.model.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.ceylon.model.typechecker.model.Class;
+import com.redhat.ceylon.model.typechecker.model.Interface;
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.Package;
+import com.redhat.ceylon.model.typechecker.model.Type;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.TypeParameter;
+import com.redhat.ceylon.model.typechecker.model.Unit;
+
+/**
+ * Builds a model without the typechecker or the model
+ * loader: a minimal <code>ceylon.language</code> with
+ * the declarations that type operations depend on, and
+ * a <code>test</code> module with
+ *
+ * <ul>
+ * <li>a chain of classes <code>C0</code> to
+ *     <code>C{depth-1}</code>, each extending the
+ *     previous one, and each satisfying
+ *     <code>Box&lt;Ci&gt;</code>,</li>
+ * <li>an enumerated class <code>E</code> with
+ *     <code>width</code> cases <code>E0</code> to
+ *     <code>E{width-1}</code>, and</li>
+ * <li>the generic interfaces <code>Box&lt;out T&gt;</code>,
+ *     <code>Sink&lt;in T&gt;</code> and
+ *     <code>Cell&lt;T&gt;</code>.</li>
+ * </ul>
+ */
+public class SyntheticModel {
+
+    private final Map<String,TypeDeclaration> declarations =
+            new HashMap<String,TypeDeclaration>();
+    private final Module languageModule;
+    private final Module module;
+    private final Unit languageUnit;
+    private final Unit unit;
+    private final int depth;
+    private final int width;
+
+    public SyntheticModel(int depth, int width) {
+        this.depth = depth;
+        this.width = width;
+        languageModule = createModule("ceylon.language");
+        languageModule.setLanguageModule(languageModule);
+        languageUnit = createUnit(languageModule);
+        module = createModule("test");
+        module.setLanguageModule(languageModule);
+        unit = createUnit(module);
+        buildLanguageModule();
+        buildTestModule();
+    }
+
+    public Module getLanguageModule() {
+        return languageModule;
+    }
+
+    public Module getModule() {
+        return module;
+    }
+
+    /**
+     * The unit of the <code>test</code> module, to pass
+     * to type operations.
+     */
+    public Unit getUnit() {
+        return unit;
+    }
+
+    public TypeDeclaration getDeclaration(String name) {
+        TypeDeclaration dec = declarations.get(name);
+        if (dec==null) {
+            throw new IllegalArgumentException(
+                    "no such declaration: " + name);
+        }
+        return dec;
+    }
+
+    public Type getType(String name) {
+        return getDeclaration(name).getType();
+    }
+
+    public Type getType(String name, Type... typeArguments) {
+        return getDeclaration(name)
+                .appliedType(null, Arrays.asList(typeArguments));
+    }
+
+    /**
+     * The class at the bottom of the chain of classes.
+     */
+    public Type getDeepestClass() {
+        return getType("C" + (depth-1));
+    }
+
+    public Type getClass(int i) {
+        return getType("C" + i);
+    }
+
+    /**
+     * The cases of the enumerated class <code>E</code>.
+     */
+    public List<Type> getCases() {
+        return getDeclaration("E").getCaseTypes();
+    }
+
+    /**
+     * A tuple type of the given length, whose element
+     * types cycle through the classes of the chain.
+     */
+    public Type getTuple(int length) {
+        List<Type> elements = new ArrayList<Type>(length);
+        for (int i=0; i<length; i++) {
+            elements.add(getClass(i % depth));
+        }
+        return unit.getTupleType(elements, false, false, -1);
+    }
+
+    public TypeParameter getTypeParameter(String declaration) {
+        return getDeclaration(declaration)
+                .getTypeParameters().get(0);
+    }
+
+    private static Module createModule(String name) {
+        Module module = new Module();
+        List<String> path = Arrays.asList(name.split("\\."));
+        module.setName(path);
+        module.setVersion("1.0.0");
+        module.setAvailable(true);
+        Package pkg = new Package();
+        pkg.setName(path);
+        pkg.setModule(module);
+        pkg.setShared(true);
+        module.getPackages().add(pkg);
+        return module;
+    }
+
+    private static Unit createUnit(Module module) {
+        Package pkg = module.getPackages().get(0);
+        Unit unit = new Unit();
+        unit.setPackage(pkg);
+        unit.setFilename(module.getNameAsString() + ".ceylon");
+        unit.setFullPath(module.getNameAsString());
+        pkg.addUnit(unit);
+        return unit;
+    }
+
+    private <T extends TypeDeclaration> T add(T dec, String name,
+            Unit unit, Type extendedType, Type... satisfiedTypes) {
+        Package pkg = unit.getPackage();
+        dec.setName(name);
+        dec.setShared(true);
+        dec.setUnit(unit);
+        dec.setContainer(pkg);
+        dec.setScope(pkg);
+        if (extendedType!=null) {
+            dec.setExtendedType(extendedType);
+        }
+        if (satisfiedTypes.length>0) {
+            dec.setSatisfiedTypes(new ArrayList<Type>(
+                    Arrays.asList(satisfiedTypes)));
+        }
+        pkg.addMember(dec);
+        unit.addDeclaration(dec);
+        declarations.put(name, dec);
+        return dec;
+    }
+
+    private TypeParameter addTypeParameter(TypeDeclaration dec,
+            String name, boolean covariant, boolean contravariant,
+            Type... satisfiedTypes) {
+        TypeParameter tp = new TypeParameter();
+        tp.setName(name);
+        tp.setDeclaration(dec);
+        tp.setContainer(dec);
+        tp.setScope(dec);
+        tp.setUnit(dec.getUnit());
+        tp.setCovariant(covariant);
+        tp.setContravariant(contravariant);
+        tp.setExtendedType(getType("Anything"));
+        if (satisfiedTypes.length>0) {
+            tp.setSatisfiedTypes(new ArrayList<Type>(
+                    Arrays.asList(satisfiedTypes)));
+        }
+        List<TypeParameter> tps =
+                new ArrayList<TypeParameter>(
+                        dec.getTypeParameters());
+        tps.add(tp);
+        dec.setTypeParameters(tps);
+        return tp;
+    }
+
+    private void buildLanguageModule() {
+        Unit u = languageUnit;
+        Class anything = add(new Class(), "Anything", u, null);
+        anything.setAbstract(true);
+        Class object = add(new Class(), "Object", u,
+                anything.getType());
+        object.setAbstract(true);
+        Class nul = add(new Class(), "Null", u,
+                anything.getType());
+        nul.setAbstract(true);
+        Type obj = object.getType();
+        Interface identifiable = add(new Interface(),
+                "Identifiable", u, obj);
+        Class basic = add(new Class(), "Basic", u, obj,
+                identifiable.getType());
+        basic.setAbstract(true);
+
+        Interface iterable = add(new Interface(),
+                "Iterable", u, obj);
+        addTypeParameter(iterable, "Element", true, false);
+        TypeParameter absent =
+                addTypeParameter(iterable, "Absent", true, false,
+                        nul.getType());
+        absent.setDefaultTypeArgument(nul.getType());
+        absent.setDefaulted(true);
+
+        Interface sequential = add(new Interface(),
+                "Sequential", u, obj);
+        TypeParameter sequentialElement =
+                addTypeParameter(sequential, "Element", true, false);
+        sequential.setSatisfiedTypes(list(
+                getType("Iterable", sequentialElement.getType(),
+                        nul.getType())));
+
+        Interface empty = add(new Interface(), "Empty", u, obj);
+        empty.setSatisfiedTypes(list(
+                getType("Sequential", u.getNothingType())));
+
+        Interface sequence = add(new Interface(),
+                "Sequence", u, obj);
+        TypeParameter sequenceElement =
+                addTypeParameter(sequence, "Element", true, false);
+        sequence.setSatisfiedTypes(list(
+                getType("Sequential", sequenceElement.getType()),
+                getType("Iterable", sequenceElement.getType(),
+                        u.getNothingType())));
+        sequential.setCaseTypes(list(empty.getType(),
+                getType("Sequence", sequentialElement.getType())));
+
+        Class tuple = add(new Class(), "Tuple", u, obj);
+        TypeParameter tupleElement =
+                addTypeParameter(tuple, "Element", true, false);
+        addTypeParameter(tuple, "First", true, false,
+                tupleElement.getType());
+        TypeParameter rest =
+                addTypeParameter(tuple, "Rest", true, false,
+                        getType("Sequential", tupleElement.getType()));
+        rest.setDefaultTypeArgument(empty.getType());
+        rest.setDefaulted(true);
+        tuple.setSatisfiedTypes(list(
+                getType("Sequence", tupleElement.getType())));
+        tuple.setFinal(true);
+
+        Interface callable = add(new Interface(),
+                "Callable", u, obj);
+        addTypeParameter(callable, "Return", true, false);
+        addTypeParameter(callable, "Arguments", false, true,
+                getType("Sequential", anything.getType()));
+
+        Class entry = add(new Class(), "Entry", u, obj);
+        addTypeParameter(entry, "Key", true, false, obj);
+        addTypeParameter(entry, "Item", true, false);
+        entry.setFinal(true);
+
+        Interface comparable = add(new Interface(),
+                "Comparable", u, obj);
+        addTypeParameter(comparable, "Other", false, true);
+
+        for (String name: Arrays.asList("String", "Integer",
+                "Float", "Character")) {
+            Class c = add(new Class(), name, u, basic.getType());
+            c.setSatisfiedTypes(list(
+                    getType("Comparable", c.getType())));
+            c.setFinal(true);
+        }
+        Class bool = add(new Class(), "Boolean", u,
+                basic.getType());
+        bool.setAbstract(true);
+        Class t = add(new Class(), "true", u, bool.getType());
+        t.setAnonymous(true);
+        t.setFinal(true);
+        Class f = add(new Class(), "false", u, bool.getType());
+        f.setAnonymous(true);
+        f.setFinal(true);
+        bool.setCaseTypes(list(t.getType(), f.getType()));
+    }
+
+    private void buildTestModule() {
+        Unit u = unit;
+        Type obj = getType("Object");
+        Interface box = add(new Interface(), "Box", u, obj);
+        addTypeParameter(box, "T", true, false);
+        Interface sink = add(new Interface(), "Sink", u, obj);
+        addTypeParameter(sink, "T", false, true);
+        Interface cell = add(new Interface(), "Cell", u, obj);
+        addTypeParameter(cell, "T", false, false);
+
+        Type extended = getType("Basic");
+        for (int i=0; i<depth; i++) {
+            Class c = add(new Class(), "C" + i, u, extended);
+            c.setSatisfiedTypes(list(getType("Box", c.getType())));
+            extended = c.getType();
+        }
+
+        Class e = add(new Class(), "E", u, getType("Basic"));
+        e.setAbstract(true);
+        List<Type> cases = new ArrayList<Type>(width);
+        for (int i=0; i<width; i++) {
+            Class c = add(new Class(), "E" + i, u, e.getType());
+            c.setAnonymous(true);
+            c.setFinal(true);
+            cases.add(c.getType());
+        }
+        e.setCaseTypes(Collections.unmodifiableList(cases));
+    }
+
+    private static List<Type> list(Type... types) {
+        return new ArrayList<Type>(Arrays.asList(types));
+    }
+}
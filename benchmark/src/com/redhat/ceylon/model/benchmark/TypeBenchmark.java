@@ -0,0 +1,226 @@
+package com.redhat.ceylon.model.benchmark;
+
+import static com.redhat.ceylon.model.typechecker.model.ModelUtil.addToUnion;
+import static com.redhat.ceylon.model.typechecker.model.ModelUtil.intersectionType;
+import static com.redhat.ceylon.model.typechecker.model.ModelUtil.principalInstantiation;
+import static com.redhat.ceylon.model.typechecker.model.ModelUtil.union;
+import static com.redhat.ceylon.model.typechecker.model.ModelUtil.unionType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.ceylon.model.typechecker.context.TypeCache;
+import com.redhat.ceylon.model.typechecker.model.SiteVariance;
+import com.redhat.ceylon.model.typechecker.model.Type;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.TypeParameter;
+import com.redhat.ceylon.model.typechecker.model.Unit;
+
+/**
+ * Benchmarks of the hot type operations, over a
+ * {@link SyntheticModel}. Run them with
+ * <code>ant benchmark</code>, or pass a regular
+ * expression to select some of them with
+ * <code>ant benchmark -Dbenchmark.includes=Subtype</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class TypeBenchmark {
+
+    /**
+     * The depth of the class hierarchy.
+     */
+    @Param({"5", "40"})
+    public int depth;
+
+    /**
+     * The number of cases of the enumerated class, and
+     * so the width of the unions.
+     */
+    @Param({"10", "200"})
+    public int width;
+
+    @Param({"true", "false"})
+    public boolean typeCache;
+
+    private SyntheticModel model;
+    private Unit unit;
+    private Type deepest;
+    private Type shallowest;
+    private Type boxOfShallowest;
+    private Type boxOfDeepest;
+    private TypeDeclaration box;
+    private List<Type> cases;
+    private List<Type> reversedCases;
+    private Type wideUnion;
+    private Type tuple;
+    private Type equalTuple;
+    private Type generic;
+    private Map<TypeParameter,Type> substitutions;
+    private Type boxOfString;
+    private Type sinkOfInteger;
+    private Type cellOfString;
+
+    @Setup
+    public void setup() {
+        TypeCache.setEnabledByDefault(typeCache);
+        model = new SyntheticModel(depth, width);
+        unit = model.getUnit();
+        deepest = model.getDeepestClass();
+        shallowest = model.getClass(0);
+        box = model.getDeclaration("Box");
+        boxOfShallowest = model.getType("Box", shallowest);
+        boxOfDeepest = model.getType("Box", deepest);
+        cases = model.getCases();
+        reversedCases = new ArrayList<Type>(cases);
+        Collections.reverse(reversedCases);
+        wideUnion = union(cases, unit);
+        tuple = model.getTuple(Math.min(depth, 16));
+        equalTuple = model.getTuple(Math.min(depth, 16));
+        TypeParameter t = model.getTypeParameter("Box");
+        generic = unit.getSequentialType(
+                unionType(t.getType(), unit.getNullType(), unit));
+        substitutions = Collections.singletonMap(t,
+                model.getType("String"));
+        boxOfString = model.getType("Box", model.getType("String"));
+        sinkOfInteger = model.getType("Sink", model.getType("Integer"));
+        cellOfString = model.getType("Cell", model.getType("String"));
+    }
+
+    @Benchmark
+    public boolean subtypeOfDeepSupertype() {
+        return deepest.isSubtypeOf(shallowest);
+    }
+
+    @Benchmark
+    public boolean notSubtypeOfDeepSubtype() {
+        return shallowest.isSubtypeOf(deepest);
+    }
+
+    @Benchmark
+    public boolean subtypeOfCovariantInstantiation() {
+        return deepest.isSubtypeOf(boxOfShallowest);
+    }
+
+    @Benchmark
+    public boolean subtypeOfWideUnion() {
+        return cases.get(cases.size()-1).isSubtypeOf(wideUnion);
+    }
+
+    @Benchmark
+    public boolean wideUnionSubtypeOfEnumeratedClass() {
+        return wideUnion.isSubtypeOf(model.getType("E"));
+    }
+
+    @Benchmark
+    public boolean exactly() {
+        return tuple.isExactly(equalTuple);
+    }
+
+    @Benchmark
+    public Type supertype() {
+        return deepest.getSupertype(box);
+    }
+
+    @Benchmark
+    public Type substitute() {
+        return generic.substitute(substitutions,
+                Collections.<TypeParameter,SiteVariance>emptyMap());
+    }
+
+    @Benchmark
+    public Type substituteNothing() {
+        return deepest.substitute(substitutions,
+                Collections.<TypeParameter,SiteVariance>emptyMap());
+    }
+
+    @Benchmark
+    public List<Type> canonicalWideUnion() {
+        List<Type> list = new ArrayList<Type>();
+        for (Type ct: reversedCases) {
+            addToUnion(list, ct);
+        }
+        return list;
+    }
+
+    @Benchmark
+    public List<Type> flattenWideUnion() {
+        List<Type> list = new ArrayList<Type>();
+        list.add(boxOfString);
+        addToUnion(list, wideUnion);
+        return list;
+    }
+
+    @Benchmark
+    public Type unionOfHierarchy() {
+        return unionType(deepest, shallowest, unit);
+    }
+
+    @Benchmark
+    public Type unionWithWideUnion() {
+        return unionType(wideUnion, boxOfString, unit);
+    }
+
+    @Benchmark
+    public Type intersectionOfGenericInterfaces() {
+        return intersectionType(
+                intersectionType(boxOfString, sinkOfInteger, unit),
+                cellOfString, unit);
+    }
+
+    @Benchmark
+    public Type principalInstantiationOfCovariant() {
+        return principalInstantiation(box,
+                boxOfShallowest, boxOfDeepest, unit);
+    }
+
+    @Benchmark
+    public Type tupleOfClasses() {
+        return model.getTuple(Math.min(depth, 16));
+    }
+
+    @Benchmark
+    public Type tupleOfCases() {
+        return unit.getTupleType(cases, false, false, -1);
+    }
+
+    @Benchmark
+    public String printTuple() {
+        return equalTuple.asString(unit);
+    }
+
+    @Benchmark
+    public String qualifiedStringOfTuple() {
+        return equalTuple.asQualifiedString();
+    }
+
+    @Benchmark
+    public boolean equalsTuple() {
+        return tuple.equals(equalTuple);
+    }
+
+    @Benchmark
+    public int hashCodeOfTuple() {
+        return tuple.hashCode();
+    }
+
+}
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.lang.model.type.TypeKind;
 
@@ -69,6 +70,7 @@ import com.redhat.ceylon.model.typechecker.model.FunctionOrValue;
 import com.redhat.ceylon.model.typechecker.model.Functional;
 import com.redhat.ceylon.model.typechecker.model.Interface;
 import com.redhat.ceylon.model.typechecker.model.ModelUtil;
+import com.redhat.ceylon.model.typechecker.model.MemberList;
 import com.redhat.ceylon.model.typechecker.model.Module;
 import com.redhat.ceylon.model.typechecker.model.ModuleImport;
 import com.redhat.ceylon.model.typechecker.model.Modules;
@@ -82,6 +84,7 @@ import com.redhat.ceylon.model.typechecker.model.Type;
 import com.redhat.ceylon.model.typechecker.model.TypeAlias;
 import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
 import com.redhat.ceylon.model.typechecker.model.TypeParameter;
+import com.redhat.ceylon.model.typechecker.model.TypeParameterMap;
 import com.redhat.ceylon.model.typechecker.model.TypedDeclaration;
 import com.redhat.ceylon.model.typechecker.model.Unit;
 import com.redhat.ceylon.model.typechecker.model.UnknownType;
@@ -278,8 +281,10 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         return new SimpleReflType(name, SimpleReflType.Module.CEYLON, TypeKind.DECLARED);
     }
 
-    protected Map<String, Declaration> valueDeclarationsByName = new HashMap<String, Declaration>();
-    protected Map<String, Declaration> typeDeclarationsByName = new HashMap<String, Declaration>();
+    // these caches are concurrent so that cache hits can be served without taking the loader lock,
+    // but they are only ever written to while holding it
+    protected Map<String, Declaration> valueDeclarationsByName = new ConcurrentHashMap<String, Declaration>();
+    protected Map<String, Declaration> typeDeclarationsByName = new ConcurrentHashMap<String, Declaration>();
     protected Map<Package, Unit> unitsByPackage = new HashMap<Package, Unit>();
     protected TypeParser typeParser;
     /** 
@@ -288,12 +293,14 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
      */
     protected Unit typeFactory;
     protected final Set<String> loadedPackages = new HashSet<String>();
-    protected final Map<String,LazyPackage> packagesByName = new HashMap<String,LazyPackage>();
+    protected final Map<String,LazyPackage> packagesByName = new ConcurrentHashMap<String,LazyPackage>();
     protected boolean packageDescriptorsNeedLoading = false;
     protected boolean isBootstrap;
     protected ModuleManager moduleManager;
     protected Modules modules;
-    protected Map<String, ClassMirror> classMirrorCache = new HashMap<String, ClassMirror>();
+    protected Map<String, ClassMirror> classMirrorCache = new ConcurrentHashMap<String, ClassMirror>();
+    // ConcurrentHashMap does not support null values, so we record the misses of classMirrorCache here
+    protected Set<String> missingClassMirrors = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     protected boolean binaryCompatibilityErrorRaised = false;
     protected Timer timer;
     private Map<String,LazyPackage> modulelessPackages = new HashMap<String,LazyPackage>();
@@ -309,10 +316,84 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
      */
     public abstract boolean loadPackage(Module module, String packageName, boolean loadDeclarations);
 
+    /**
+     * Returns the lock which guards every mutation of the model loader state and every declaration
+     * completion. Lookups which hit one of the loader caches, and lazy declarations which are already
+     * completed, do not need to take it.
+     */
     public final Object getLock(){
         return this;
     }
 
+    private volatile boolean frozen = false;
+
+    /**
+     * Completes every package and declaration loaded so far, along with everything they load in turn,
+     * then freezes every module, package and member list, so that from then on lookups of loaded
+     * packages and declarations are served from immutable collections without taking the lock.
+     * Packages which were never loaded are not part of a frozen model, and no more packages or
+     * declarations may be loaded once it is frozen, so this is meant to be called once compilation is
+     * over, by clients which only read the model.
+     * 
+     * The model loader never freezes itself, since it can't tell when whoever drives it is done
+     * loading: that is up to the compiler backend or runtime which owns it, and is never the case
+     * for the IDE, whose model keeps changing. This also freezes the {@link Modules}, so they don't
+     * need to be frozen separately.
+     */
+    public void freeze(){
+        synchronized(getLock()){
+            if(frozen)
+                return;
+            // completing declarations can load more packages and declarations, so go on until we
+            // reach a fixpoint
+            Set<Declaration> completed = new HashSet<Declaration>();
+            int loaded;
+            do{
+                loaded = packagesByName.size() + typeDeclarationsByName.size() + valueDeclarationsByName.size();
+                for(LazyPackage pkg : new ArrayList<LazyPackage>(packagesByName.values())){
+                    if(pkg.getModule() != null)
+                        loadPackage(pkg.getModule(), pkg.getQualifiedNameString(), true);
+                }
+                List<Declaration> declarations = new ArrayList<Declaration>(loaded);
+                declarations.addAll(typeDeclarationsByName.values());
+                declarations.addAll(valueDeclarationsByName.values());
+                for(Declaration declaration : declarations){
+                    complete(declaration, completed);
+                }
+            }while(loaded != packagesByName.size() + typeDeclarationsByName.size() + valueDeclarationsByName.size());
+            for(Declaration declaration : completed){
+                List<Declaration> members = declaration.getMembers();
+                if(members instanceof MemberList)
+                    ((MemberList) members).freeze();
+            }
+            for(LazyPackage pkg : packagesByName.values()){
+                if(pkg.getModule() != null)
+                    pkg.freeze();
+            }
+            if(modules != null)
+                modules.freeze();
+            frozen = true;
+        }
+    }
+
+    private void complete(Declaration declaration, Set<Declaration> completed) {
+        if(!completed.add(declaration))
+            return;
+        // every lazy declaration loads itself when asked for its members or its type
+        List<Declaration> members = declaration.getMembers();
+        if(declaration instanceof TypedDeclaration)
+            ((TypedDeclaration) declaration).getType();
+        else if(declaration instanceof TypeDeclaration)
+            ((TypeDeclaration) declaration).getExtendedType();
+        for(int i=0;i<members.size();i++){
+            complete(members.get(i), completed);
+        }
+    }
+
+    public boolean isFrozen(){
+        return frozen;
+    }
+
     /**
      * To be redefined by subclasses if they don't need local declarations.
      */
@@ -344,34 +425,44 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
      * @return a ClassMirror for the specified class, or null if not found.
      */
     public final ClassMirror lookupClassMirror(Module module, String name) {
+        // Java array classes are not where we expect them
+        if (JAVA_LANG_OBJECT_ARRAY.equals(name)
+                || JAVA_LANG_BOOLEAN_ARRAY.equals(name)
+                || JAVA_LANG_BYTE_ARRAY.equals(name)
+                || JAVA_LANG_SHORT_ARRAY.equals(name)
+                || JAVA_LANG_INT_ARRAY.equals(name)
+                || JAVA_LANG_LONG_ARRAY.equals(name)
+                || JAVA_LANG_FLOAT_ARRAY.equals(name)
+                || JAVA_LANG_DOUBLE_ARRAY.equals(name)
+                || JAVA_LANG_CHAR_ARRAY.equals(name)) {
+            // turn them into their real class location (get rid of the "java.lang" prefix)
+            name = "com.redhat.ceylon.compiler.java.language" + name.substring(9);
+            module = getLanguageModule();
+        }
+        String cacheKey = cacheKeyByModule(module, name);
+        // fast path: cache hits do not need the lock
+        ClassMirror cachedMirror = classMirrorCache.get(cacheKey);
+        if(cachedMirror != null && !searchAgain(cachedMirror, module, name))
+            return cachedMirror;
         synchronized(getLock()){
             timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
             try{
-                // Java array classes are not where we expect them
-                if (JAVA_LANG_OBJECT_ARRAY.equals(name)
-                        || JAVA_LANG_BOOLEAN_ARRAY.equals(name)
-                        || JAVA_LANG_BYTE_ARRAY.equals(name)
-                        || JAVA_LANG_SHORT_ARRAY.equals(name)
-                        || JAVA_LANG_INT_ARRAY.equals(name)
-                        || JAVA_LANG_LONG_ARRAY.equals(name)
-                        || JAVA_LANG_FLOAT_ARRAY.equals(name)
-                        || JAVA_LANG_DOUBLE_ARRAY.equals(name)
-                        || JAVA_LANG_CHAR_ARRAY.equals(name)) {
-                    // turn them into their real class location (get rid of the "java.lang" prefix)
-                    name = "com.redhat.ceylon.compiler.java.language" + name.substring(9);
-                    module = getLanguageModule();
-                }
-                String cacheKey = cacheKeyByModule(module, name);
-                // we use containsKey to be able to cache null results
-                if(classMirrorCache.containsKey(cacheKey)) {
-                    ClassMirror cachedMirror = classMirrorCache.get(cacheKey);
+                // we keep track of misses to be able to cache null results
+                cachedMirror = classMirrorCache.get(cacheKey);
+                if(cachedMirror != null || missingClassMirrors.contains(cacheKey)) {
                     if (! searchAgain(cachedMirror, module, name)) {
                         return cachedMirror;
                     }
                 }
                 ClassMirror mirror = lookupNewClassMirror(module, name);
                 // we even cache null results
-                classMirrorCache.put(cacheKey, mirror);
+                if(mirror != null){
+                    classMirrorCache.put(cacheKey, mirror);
+                    missingClassMirrors.remove(cacheKey);
+                }else{
+                    classMirrorCache.remove(cacheKey);
+                    missingClassMirrors.add(cacheKey);
+                }
                 return mirror;
             }finally{
                 timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
@@ -1030,14 +1121,22 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
             key = key + "$header";
         }
         if(type == ClassType.OBJECT){
-            typeDeclarationsByName.put(key, getByType(decls, Class.class));
-            valueDeclarationsByName.put(key, getByType(decls, Value.class));
+            putCachedDeclaration(typeDeclarationsByName, key, getByType(decls, Class.class));
+            putCachedDeclaration(valueDeclarationsByName, key, getByType(decls, Value.class));
         }else {
             Map<String, Declaration> declarationCache = getCacheByType(type, declarationType);
-            declarationCache.put(key, decl);
+            putCachedDeclaration(declarationCache, key, decl);
         }
     }
     
+    private void putCachedDeclaration(Map<String, Declaration> declarationCache, String key, Declaration decl) {
+        // our caches do not support null values, and a null would only mean a cache miss anyway
+        if(decl != null)
+            declarationCache.put(key, decl);
+        else
+            declarationCache.remove(key);
+    }
+    
     private Map<String, Declaration> getCacheByType(ClassType type, DeclarationType declarationType) {
         Map<String, Declaration> declarationCache = null;
         switch(type){
@@ -1712,9 +1811,13 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     // Packages
     
     public LazyPackage findExistingPackage(Module module, String pkgName) {
+        String quotedPkgName = JVMModuleUtil.quoteJavaKeywords(pkgName);
+        // fast path: cache hits do not need the lock
+        LazyPackage pkg = findCachedPackage(module, quotedPkgName);
+        if(pkg != null)
+            return pkg;
         synchronized(getLock()){
-            String quotedPkgName = JVMModuleUtil.quoteJavaKeywords(pkgName);
-            LazyPackage pkg = findCachedPackage(module, quotedPkgName);
+            pkg = findCachedPackage(module, quotedPkgName);
             if(pkg != null)
                 return pkg;
             // special case for the jdk module
@@ -1746,9 +1849,13 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     }
 
     public LazyPackage findOrCreatePackage(Module module, final String pkgName)  {
+        String quotedPkgName = JVMModuleUtil.quoteJavaKeywords(pkgName);
+        // fast path: cache hits do not need the lock
+        LazyPackage pkg = findCachedPackage(module, quotedPkgName);
+        if(pkg != null)
+            return pkg;
         synchronized(getLock()){
-            String quotedPkgName = JVMModuleUtil.quoteJavaKeywords(pkgName);
-            LazyPackage pkg = findCachedPackage(module, quotedPkgName);
+            pkg = findCachedPackage(module, quotedPkgName);
             if(pkg != null)
                 return pkg;
             // try to find it from the module, perhaps it already got created and we didn't catch it
@@ -1763,21 +1870,25 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
                 // FIXME: some refactoring needed
                 pkg.setName(Arrays.asList(pkgName.split("\\.")));
             }
-            packagesByName.put(cacheKeyByModule(module, quotedPkgName), pkg);
+            try{
+                // only bind it if we already have a module
+                if(isNew && module != null){
+                    pkg.setModule(module);
+                    if(module instanceof LazyModule)
+                        ((LazyModule) module).addPackage(pkg);
+                    else
+                        module.getPackages().add(pkg);
+                }
 
-            // only bind it if we already have a module
-            if(isNew && module != null){
-                pkg.setModule(module);
-                if(module instanceof LazyModule)
-                    ((LazyModule) module).addPackage(pkg);
-                else
-                    module.getPackages().add(pkg);
+                // only load package descriptors for new packages after a certain phase
+                if(packageDescriptorsNeedLoading)
+                    loadPackageDescriptor(pkg);
+            }finally{
+                // only publish it once it is set up, since cache hits are served without the lock.
+                // reentrant lookups while we load its descriptor find it in its module anyway
+                packagesByName.put(cacheKeyByModule(module, quotedPkgName), pkg);
             }
 
-            // only load package descriptors for new packages after a certain phase
-            if(packageDescriptorsNeedLoading)
-                loadPackageDescriptor(pkg);
-
             return pkg;
         }
     }
@@ -4459,6 +4570,9 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
                 }
             }
         }
+        // we added to the list in place, so set it again to invalidate any
+        // supertype declarations memoised while we were completing
+        klass.setSatisfiedTypes(klass.getSatisfiedTypes());
     }
 
     //
@@ -4985,7 +5099,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
                     if(!JvmBackendUtil.isCeylon(declaration) && siteVariance != null){
                         // lazy alloc
                         if(siteVarianceMap == null)
-                            siteVarianceMap = new HashMap<TypeParameter,SiteVariance>();
+                            siteVarianceMap = new TypeParameterMap<SiteVariance>();
                         siteVarianceMap.put(typeParameter, siteVariance);
                     }
                     
@@ -5255,6 +5369,7 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
             for (String keyToRemove : keysToRemove) {
                 classMirrorCache.remove(keyToRemove);
             }
+            missingClassMirrors.clear();
         }
     }
 
@@ -6,13 +6,25 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -22,6 +34,11 @@ import com.redhat.ceylon.model.cmr.PathFilter;
 import com.redhat.ceylon.model.loader.ContentAwareArtifactResult;
 import com.redhat.ceylon.model.typechecker.model.Module;
 
+/**
+ * Indexes the entries of module jars, and reads their contents. Jars we read from
+ * are kept open, up to {@link #getMaxOpenJars()}, so whoever owns an instance must
+ * {@link #close()} it once it is done loading from it.
+ */
 public class CachedTOCJars {
 
     /**
@@ -29,40 +46,96 @@ public class CachedTOCJars {
      */
     static class CachedTOCJar {
         ArtifactResult artifact;
-        // stores class file names with slashes
-        Set<String> contents = new HashSet<String>();
-        // stores package paths with slashes but not last one
-        Set<String> packages = new HashSet<String>();
+        // stores the names of the accepted files, without their package path and
+        // sorted, by package path with slashes but not last one
+        Map<String,String[]> packages = new HashMap<String,String[]>();
         // not not attempt to load contents from this jar, just its TOC
         boolean skipContents;
+        // where we get open zip files from
+        ZipFilePool pool;
         
-        CachedTOCJar(ArtifactResult artifact, boolean skipContents){
+        CachedTOCJar(ArtifactResult artifact, boolean skipContents, ZipFilePool pool, 
+                ConcurrentMap<String,String> packageNames){
             this.artifact = artifact;
             this.skipContents = skipContents;
+            this.pool = pool;
             if (artifact instanceof ContentAwareArtifactResult) {
-                packages.addAll(((ContentAwareArtifactResult) artifact).getPackages());
-                contents.addAll(((ContentAwareArtifactResult) artifact).getEntries());
+                Map<String,List<String>> toc = new HashMap<String,List<String>>();
+                for(String pkg : ((ContentAwareArtifactResult) artifact).getPackages()){
+                    toc.put(pkg, new ArrayList<String>(0));
+                }
+                for(String name : ((ContentAwareArtifactResult) artifact).getEntries()){
+                    String pkg = getPackageName(name);
+                    List<String> files = toc.get(pkg);
+                    if(files == null){
+                        files = new ArrayList<String>();
+                        toc.put(pkg, files);
+                    }
+                    files.add(name);
+                }
+                index(toc, packageNames, false);
             } else {
-                if (artifact.artifact() != null) {
-                    try {
-                        ZipFile zf = new ZipFile(artifact.artifact());
-                        try{
-                            Enumeration<? extends ZipEntry> entries = zf.entries();
-                            while(entries.hasMoreElements()){
-                                ZipEntry entry = entries.nextElement();
-                                // only cache class files
-                                if(!entry.isDirectory() && accept(entry.getName())){
-                                    packages.add(getPackageName(entry.getName()));
-                                    contents.add(entry.getName());
-                                }
+                File jar = artifact.artifact();
+                if (jar != null) {
+                    index(scan(jar), packageNames, true);
+                }
+            }
+        }
+
+        /**
+         * Fills our packages from the given file names by package path. Package
+         * paths are shared with the other jars through the given map.
+         */
+        private void index(Map<String,List<String>> toc, ConcurrentMap<String,String> packageNames, boolean filter) {
+            for(Map.Entry<String,List<String>> entry : toc.entrySet()){
+                String pkg = entry.getKey();
+                int prefix = pkg.isEmpty() ? 0 : pkg.length() + 1;
+                List<String> names = new ArrayList<String>(entry.getValue().size());
+                for(String name : entry.getValue()){
+                    // only cache class files
+                    if(!filter || accept(name)){
+                        names.add(name.substring(prefix));
+                    }
+                }
+                // a package with no accepted files does not exist for us
+                if(filter && names.isEmpty())
+                    continue;
+                String[] files = names.toArray(new String[names.size()]);
+                Arrays.sort(files);
+                String sharedPkg = packageNames.putIfAbsent(pkg, pkg);
+                if(sharedPkg == null)
+                    sharedPkg = pkg;
+                packages.put(sharedPkg, files);
+            }
+        }
+
+        /**
+         * Returns every file entry of the jar, by package, unfiltered
+         */
+        private Map<String,List<String>> scan(File jar) {
+            try {
+                ZipFile zf = new ZipFile(jar);
+                try{
+                    Map<String,List<String>> toc = new TreeMap<String,List<String>>();
+                    Enumeration<? extends ZipEntry> entries = zf.entries();
+                    while(entries.hasMoreElements()){
+                        ZipEntry entry = entries.nextElement();
+                        if(!entry.isDirectory()){
+                            String pkg = getPackageName(entry.getName());
+                            List<String> files = toc.get(pkg);
+                            if(files == null){
+                                files = new ArrayList<String>();
+                                toc.put(pkg, files);
                             }
-                        }finally{
-                            zf.close();
+                            files.add(entry.getName());
                         }
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
                     }
+                    return toc;
+                }finally{
+                    zf.close();
                 }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
         }
 
@@ -79,11 +152,13 @@ public class CachedTOCJars {
         }
 
         boolean containsFile(String path){
-            return contents.contains(path);
+            int lastSlash = path.lastIndexOf('/');
+            String[] files = packages.get(lastSlash == -1 ? "" : path.substring(0, lastSlash));
+            return files != null && Arrays.binarySearch(files, path.substring(lastSlash + 1)) >= 0;
         }
 
         boolean containsPackage(String path) {
-            return packages.contains(path);
+            return packages.containsKey(path);
         }
 
         byte[] getContents(String path){
@@ -93,13 +168,15 @@ public class CachedTOCJars {
             File jar = artifact.artifact();
             if (jar != null) {
                 try {
-                    ZipFile zf = new ZipFile(jar);
+                    // the pool does not close our zip file until we release it, so we can read
+                    // without holding its lock
+                    OpenZipFile ozf = pool.open(jar);
                     try{
-                        ZipEntry entry = zf.getEntry(path);
+                        ZipEntry entry = ozf.zipFile.getEntry(path);
                         if(entry != null)
-                            return loadFile(zf.getInputStream(entry), (int)entry.getSize());
+                            return loadFile(ozf.zipFile.getInputStream(entry), (int)entry.getSize());
                     }finally{
-                        zf.close();
+                        pool.release(ozf);
                     }
                 } catch (IOException e) {
                     throw new RuntimeException(e);
@@ -115,19 +192,14 @@ public class CachedTOCJars {
             }
             File jar = artifact.artifact();
             if (jar != null) {
-                try {
-                    ZipFile zf = new ZipFile(jar);
-                    try{
-                        ZipEntry entry = zf.getEntry(path);
-                        if (entry != null) {
-                            String uripath = FileUtil.absoluteFile(jar).toURI().getSchemeSpecificPart();
-                            return new URI("classpath:" + uripath + "!" + entry.getName());
-                        }
-                    }finally{
-                        zf.close();
+                // no need to open the jar, we know all its entries
+                if(containsFile(path)){
+                    try {
+                        String uripath = FileUtil.absoluteFile(jar).toURI().getSchemeSpecificPart();
+                        return new URI("classpath:" + uripath + "!" + path);
+                    } catch (URISyntaxException e) {
+                        throw new RuntimeException(e);
                     }
-                } catch (IOException | URISyntaxException e) {
-                    throw new RuntimeException(e);
                 }
                 throw new RuntimeException("Missing entry: "+path+" in jar file: "+ jar.getPath());
             }
@@ -155,40 +227,15 @@ public class CachedTOCJars {
             
             File jar = artifact.artifact();
             if (jar != null) {
-                try {
-                    // add a trailing / to only list members
-                    boolean emptyPackage = path.isEmpty();
-                    // only used for non-empty packages
-                    path += "/";
-                    ZipFile zf = new ZipFile(jar);
-                    try{
-                        Enumeration<? extends ZipEntry> entries = zf.entries();
-                        List<String> ret = new ArrayList<String>();
-                        while(entries.hasMoreElements()){
-                            ZipEntry entry = entries.nextElement();
-                            String name = entry.getName();
-                            // only cache class files
-                            if(!entry.isDirectory() && accept(name)){
-                                String part = null;
-                                if(!emptyPackage && name.startsWith(path)){
-                                    // keep only the part after the package name
-                                    part = name.substring(path.length());
-                                }else if(emptyPackage){
-                                    // keep it all, we'll filter later those in subfolders
-                                    part = name;
-                                }
-                                // only keep those not in subfolders
-                                if(part != null && part.indexOf('/') == -1)
-                                    ret.add(name);
-                            }
-                        }
-                        return ret;
-                    }finally{
-                        zf.close();
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+                String[] files = packages.get(path);
+                if(files == null)
+                    return new ArrayList<String>(0);
+                String prefix = path.isEmpty() ? "" : path + "/";
+                List<String> ret = new ArrayList<String>(files.length);
+                for(String file : files){
+                    ret.add(prefix + file);
                 }
+                return ret;
             } else {
                 throw new RuntimeException("No file associated with artifact : " + artifact.toString());
             }
@@ -196,39 +243,275 @@ public class CachedTOCJars {
 
         @Override
         public String toString(){
-            return "CachedTOCJar[jar="+artifact+"; contents="+contents+"; packages="+packages+"]";
+            return "CachedTOCJar[jar="+artifact+"; packages="+packages.keySet()+"]";
         }
     }
     
-    private Map<Module, CachedTOCJar> jars = new HashMap<Module, CachedTOCJar>();
+    /**
+     * A zip file opened by the pool, along with the number of readers using it
+     */
+    static class OpenZipFile {
+        final ZipFile zipFile;
+        // both guarded by the pool
+        private int readers;
+        private boolean pooled;
+
+        OpenZipFile(ZipFile zipFile) {
+            this.zipFile = zipFile;
+        }
+    }
+
+    /**
+     * Keeps a bounded number of jars open, closing the least recently used one
+     * when it needs to open another. Every zip file obtained from {@link #open(File)}
+     * stays open until it is passed to {@link #release(OpenZipFile)}, even if the pool
+     * stops keeping it in the meantime, so callers only hold the pool's lock while
+     * opening and releasing, not while reading.
+     */
+    static class ZipFilePool {
+        // most recently used last
+        private final LinkedHashMap<File,OpenZipFile> open = new LinkedHashMap<File,OpenZipFile>(16, 0.75f, true);
+        private int maxOpen;
+
+        ZipFilePool(int maxOpen) {
+            this.maxOpen = maxOpen;
+        }
+
+        synchronized void setMaxOpen(int maxOpen) {
+            this.maxOpen = maxOpen;
+            trim(maxOpen);
+        }
+
+        synchronized int getMaxOpen() {
+            return maxOpen;
+        }
+
+        synchronized OpenZipFile open(File jar) throws IOException {
+            OpenZipFile ozf = open.get(jar);
+            if(ozf == null){
+                ozf = new OpenZipFile(new ZipFile(jar));
+                if(maxOpen > 0){
+                    trim(maxOpen - 1);
+                    ozf.pooled = true;
+                    open.put(jar, ozf);
+                }
+            }
+            ozf.readers++;
+            return ozf;
+        }
+
+        synchronized void release(OpenZipFile ozf) {
+            ozf.readers--;
+            // only close it if we don't keep it and nobody else is reading it
+            if(!ozf.pooled && ozf.readers == 0)
+                close(ozf);
+        }
+
+        synchronized void close() {
+            trim(0);
+        }
+
+        private void trim(int size) {
+            Iterator<OpenZipFile> iterator = open.values().iterator();
+            while(open.size() > size && iterator.hasNext()){
+                OpenZipFile ozf = iterator.next();
+                iterator.remove();
+                ozf.pooled = false;
+                // the last reader closes it otherwise
+                if(ozf.readers == 0)
+                    close(ozf);
+            }
+        }
+
+        private void close(OpenZipFile ozf) {
+            try{
+                ozf.zipFile.close();
+            }catch(IOException x){
+                // we don't care, we were only reading
+            }
+        }
+    }
+    
+    public static final int DEFAULT_MAX_OPEN_JARS = 32;
+    
+    /**
+     * Indexes jars for every instance, with one thread per processor at most, which
+     * go away when they have nothing to do. Lazily created on the first concurrent
+     * batch of jars.
+     */
+    private static class Indexer {
+        static final ThreadPoolExecutor executor;
+        static {
+            int threads = Runtime.getRuntime().availableProcessors();
+            executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS, 
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CachedTOCJars indexer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+    
+    // jars being indexed or indexed, by module
+    private ConcurrentMap<Module, FutureTask<CachedTOCJar>> jars = new ConcurrentHashMap<Module, FutureTask<CachedTOCJar>>();
+    private ZipFilePool pool = new ZipFilePool(DEFAULT_MAX_OPEN_JARS);
+    // package paths shared by all our jars, since many jars share packages
+    private ConcurrentMap<String,String> packageNames = new ConcurrentHashMap<String,String>();
+    
+    /**
+     * Sets the maximum number of jars kept open to read their contents, or 0
+     * to open and close jars on each read.
+     */
+    public void setMaxOpenJars(int max) {
+        pool.setMaxOpen(max);
+    }
+    
+    public int getMaxOpenJars() {
+        return pool.getMaxOpen();
+    }
+    
+    /**
+     * Closes the jars kept open. They will be opened again if we need to read
+     * from them later. Nothing else closes them.
+     */
+    public void close() {
+        pool.close();
+    }
     
     public void addJar(ArtifactResult artifact, Module module) {
         addJar(artifact, module, false);
     }
     
     public void addJar(ArtifactResult artifact, Module module, boolean skipContents) {
+        FutureTask<CachedTOCJar> task = newIndexingTask(artifact, module, skipContents);
         // skip duplicates
-        if(jars.containsKey(module))
+        if(task == null)
+            return;
+        task.run();
+        // report any error now
+        getJar(task);
+    }
+
+    /**
+     * Adds the given jars for the given modules, in the same order, indexing
+     * them concurrently. This returns before the jars are indexed: asking about
+     * one of them then waits until that particular jar is indexed, and throws
+     * the first time we ask about its module if it could not be indexed. Lookups
+     * by path skip it.
+     */
+    public void addJars(Collection<ArtifactResult> artifacts, Module... modules) {
+        if(artifacts.size() != modules.length)
+            throw new IllegalArgumentException("Expected as many modules as artifacts: "+artifacts.size()+" artifacts for "+modules.length+" modules");
+        List<FutureTask<CachedTOCJar>> tasks = new ArrayList<FutureTask<CachedTOCJar>>(modules.length);
+        int i = 0;
+        for(ArtifactResult artifact : artifacts){
+            FutureTask<CachedTOCJar> task = newIndexingTask(artifact, modules[i++], false);
+            // skip duplicates
+            if(task != null)
+                tasks.add(task);
+        }
+        if(tasks.isEmpty())
+            return;
+        if(tasks.size() == 1 || Runtime.getRuntime().availableProcessors() == 1){
+            for(FutureTask<CachedTOCJar> task : tasks){
+                task.run();
+            }
             return;
-        jars.put(module, new CachedTOCJar(artifact, skipContents));
+        }
+        for(FutureTask<CachedTOCJar> task : tasks){
+            Indexer.executor.execute(task);
+        }
+    }
+
+    /**
+     * Registers a task which indexes the given jar, and returns it, or returns
+     * null if we already have a jar for that module.
+     */
+    private FutureTask<CachedTOCJar> newIndexingTask(final ArtifactResult artifact, Module module, final boolean skipContents) {
+        FutureTask<CachedTOCJar> task = new FutureTask<CachedTOCJar>(new Callable<CachedTOCJar>(){
+            @Override
+            public CachedTOCJar call() {
+                return new CachedTOCJar(artifact, skipContents, pool, packageNames);
+            }
+        });
+        return jars.putIfAbsent(module, task) == null ? task : null;
+    }
+
+    private CachedTOCJar getJar(Module module) {
+        FutureTask<CachedTOCJar> task = jars.get(module);
+        return task != null ? getJar(task) : null;
+    }
+
+    /**
+     * Waits for the given jar to be indexed, and throws if it could not be
+     */
+    private CachedTOCJar getJar(FutureTask<CachedTOCJar> task) {
+        try{
+            return await(task);
+        }catch(ExecutionException x){
+            // forget about it, like if we had never added it, so
+            // that we only report it once
+            jars.values().remove(task);
+            Throwable cause = x.getCause();
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if(cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Waits for the given jar to be indexed, and returns null if it could not be,
+     * for lookups which go through every jar: the error is reported when we ask
+     * about the module of that jar.
+     */
+    private CachedTOCJar getIndexedJar(FutureTask<CachedTOCJar> task) {
+        try{
+            return await(task);
+        }catch(ExecutionException x){
+            return null;
+        }
+    }
+
+    private CachedTOCJar await(FutureTask<CachedTOCJar> task) throws ExecutionException {
+        boolean interrupted = false;
+        try{
+            while(true){
+                try{
+                    return task.get();
+                }catch(InterruptedException x){
+                    // keep waiting, but remember to restore the interrupt
+                    interrupted = true;
+                }
+            }
+        }finally{
+            if(interrupted)
+                Thread.currentThread().interrupt();
+        }
     }
 
     public boolean packageExists(Module module, String name) {
         String path = name.replace('.', '/');
-        CachedTOCJar jar = jars.get(module);
+        CachedTOCJar jar = getJar(module);
         return jar != null && jar.containsPackage(path);
     }
 
     public List<String> getPackageList(Module module, String name) {
         String path = name.replace('.', '/');
-        CachedTOCJar jar = jars.get(module);
+        CachedTOCJar jar = getJar(module);
         return jar != null && jar.containsPackage(path) ?
                 jar.getFileNames(path) : Collections.<String>emptyList();
     }
 
     public byte[] getContents(String path) {
-        for(CachedTOCJar jar : jars.values()){
-            if(!jar.skipContents && jar.containsFile(path)){
+        for(FutureTask<CachedTOCJar> task : jars.values()){
+            CachedTOCJar jar = getIndexedJar(task);
+            if(jar != null && !jar.skipContents && jar.containsFile(path)){
                 return jar.getContents(path);
             }
         }
@@ -236,8 +519,9 @@ public class CachedTOCJars {
     }
 
     public URI getContentUri(String path) {
-        for(CachedTOCJar jar : jars.values()){
-            if(!jar.skipContents && jar.containsFile(path)){
+        for(FutureTask<CachedTOCJar> task : jars.values()){
+            CachedTOCJar jar = getIndexedJar(task);
+            if(jar != null && !jar.skipContents && jar.containsFile(path)){
                 return jar.getContentUri(path);
             }
         }
@@ -245,7 +529,7 @@ public class CachedTOCJars {
     }
 
     public byte[] getContents(Module module, String path) {
-        CachedTOCJar jar = jars.get(module);
+        CachedTOCJar jar = getJar(module);
         if(jar != null && !jar.skipContents && jar.containsFile(path)){
             return jar.getContents(path);
         }
@@ -253,7 +537,7 @@ public class CachedTOCJars {
     }
 
     public URI getContentUri(Module module, String path) {
-        CachedTOCJar jar = jars.get(module);
+        CachedTOCJar jar = getJar(module);
         if(jar != null && !jar.skipContents && jar.containsFile(path)){
             return jar.getContentUri(path);
         }
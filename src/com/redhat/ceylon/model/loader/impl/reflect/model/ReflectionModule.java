@@ -9,7 +9,7 @@ import com.redhat.ceylon.model.typechecker.model.Package;
 public class ReflectionModule extends LazyModule {
 
     private ReflectionModuleManager modelManager;
-    private boolean packagesLoaded = false;
+    private volatile boolean packagesLoaded = false;
 
     public ReflectionModule(ReflectionModuleManager reflectionModuleManager) {
         this.modelManager = reflectionModuleManager;
@@ -27,9 +27,10 @@ public class LazyClassAlias extends ClassAlias implements LazyContainer {
     private ModelCompleter completer;
     
     private boolean isLoaded = false;
-    private boolean isLoaded2 = false;
+    // volatile so that completed declarations can be read without taking the completer lock
+    private volatile boolean isLoaded2 = false;
     private boolean isTypeParamsLoaded = false;
-    private boolean isTypeParamsLoaded2 = false;
+    private volatile boolean isTypeParamsLoaded2 = false;
     private boolean local;
 
     @Override
@@ -38,7 +38,8 @@ public class LazyFunction extends Function implements LazyElement, LocalDeclarat
     private String realMethodName;
     
     private boolean isLoaded = false;
-    private boolean isLoaded2 = false;
+    // volatile so that completed declarations can be read without taking the completer lock
+    private volatile boolean isLoaded2 = false;
     
     private Map<String,Declaration> localDeclarations;
     
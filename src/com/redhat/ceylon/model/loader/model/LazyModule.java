@@ -4,8 +4,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -27,7 +30,11 @@ import com.redhat.ceylon.model.typechecker.model.Package;
 public abstract class LazyModule extends Module {
 
     private boolean isJava = false;
-    protected Set<String> jarPackages = new HashSet<String>();
+    protected Set<String> jarPackages = new JarPackages();
+    // the packages found by getPackage(), which are only valid as long as neither this module nor
+    // any module it can see packages of gains or loses a package or an import, and which are read
+    // without taking the model loader lock
+    private volatile PackageTable packageTable;
 
     public LazyModule() {
     }
@@ -39,6 +46,61 @@ public abstract class LazyModule extends Module {
     
     @Override
     public Package getPackage(String name) {
+        PackageTable table = packageTable;
+        if(table == null || !table.isCurrent()){
+            // read the stamp before the versions, so that a change made meanwhile makes the table stale
+            int stamp = getPackagesStamp();
+            table = new PackageTable(getVisibleModules(), stamp);
+            packageTable = table;
+        }
+        Package pkg = table.packages.get(name);
+        if(pkg != null)
+            return pkg;
+        pkg = resolvePackage(name);
+        // only remember the packages we found, since a missing package may be loaded later.
+        // if resolving it loaded any package, the table is already stale, and will be dropped
+        if(pkg != null)
+            table.packages.put(name, pkg);
+        return pkg;
+    }
+
+    /**
+     * The modules whose packages and imports decide how we resolve a package name: this module, the
+     * modules we import and everything they export, and the language module if we're a JDK module.
+     * This follows the same paths as resolvePackage()
+     */
+    private Set<Module> getVisibleModules() {
+        Set<Module> modules = new LinkedHashSet<Module>();
+        modules.add(this);
+        for(ModuleImport dependency : getImports())
+            addVisibleModules(dependency.getModule(), modules);
+        if(JDKUtils.isJDKModule(getNameAsString()) || JDKUtils.isOracleJDKModule(getNameAsString())){
+            Module languageModule = getModelLoader().getLanguageModule();
+            if(languageModule != null)
+                modules.add(languageModule);
+        }
+        return modules;
+    }
+
+    private void addVisibleModules(Module module, Set<Module> modules) {
+        if(module == null || !modules.add(module))
+            return;
+        if(module instanceof LazyModule){
+            for(ModuleImport dep : module.getImports()){
+                if(dep.isExport())
+                    addVisibleModules(dep.getModule(), modules);
+            }
+        }else{
+            // Module.getPackage() looks in every module it imports, but not further
+            for(ModuleImport dep : module.getImports()){
+                Module imported = dep.getModule();
+                if(imported != null)
+                    modules.add(imported);
+            }
+        }
+    }
+
+    private Package resolvePackage(String name) {
         // try here first
         Package pkg = null;
         
@@ -75,7 +137,7 @@ public abstract class LazyModule extends Module {
         }
         // do the lookup of the default module last
         if(defaultModule)
-            pkg = getModelLoader().findExistingPackage(this, name);
+            pkg = isFrozen() ? findPackageNoLazyLoading(name) : getModelLoader().findExistingPackage(this, name);
         return pkg;
     }
 
@@ -106,6 +168,9 @@ public abstract class LazyModule extends Module {
 
     private Package findPackageInModule(LazyModule module, String name) {
         if(module.containsPackage(name)){
+            // a frozen module already has all its packages, and they can't change, so we don't need the lock
+            if(module.isFrozen())
+                return module.findPackageNoLazyLoading(name);
             // first try the already loaded packages from that module
             AbstractModelLoader modelLoader = getModelLoader();
             synchronized(modelLoader.getLock()){
@@ -137,6 +202,7 @@ public abstract class LazyModule extends Module {
 
     public void setJava(boolean isJava) {
         this.isJava = isJava;
+        packagesChanged();
     }
 
     public void loadPackageList(ArtifactResult artifact) {
@@ -234,6 +300,75 @@ public abstract class LazyModule extends Module {
                 || JDKUtils.isOracleJDKPackage(moduleName, packageName);
     }
 
+    /**
+     * The packages resolved for a given version of the packages and imports of every module we can
+     * see packages of. If any of them changes, and in particular if we or a module we can see gain
+     * or lose an import, the table is dropped and the visible modules are collected again. Checking
+     * that is usually a single comparison of the packages stamp the table is known to be current as
+     * of: only once the packages or imports of some module changed do we compare the version of
+     * every module we can see.
+     */
+    private static class PackageTable {
+        final Module[] modules;
+        final int[] versions;
+        final Map<String,Package> packages = new ConcurrentHashMap<String,Package>();
+        volatile int stamp;
+        
+        PackageTable(Set<Module> modules, int stamp){
+            this.modules = modules.toArray(new Module[modules.size()]);
+            this.stamp = stamp;
+            // read the versions before resolving anything, so that a change made while we resolve
+            // a package makes the table stale
+            versions = new int[this.modules.length];
+            for(int i=0;i<versions.length;i++)
+                versions[i] = this.modules[i].getPackagesVersion();
+        }
+        
+        boolean isCurrent(){
+            int current = getPackagesStamp();
+            if(stamp == current)
+                return true;
+            for(int i=0;i<versions.length;i++){
+                if(modules[i].getPackagesVersion() != versions[i])
+                    return false;
+            }
+            // nothing we can see changed, so we don't need to look again until something else does
+            stamp = current;
+            return true;
+        }
+    }
+    
+    /**
+     * The set of packages in our jar, which tells us and every module which can see our packages
+     * to resolve its packages again when it is modified, since we may now contain a package they
+     * found elsewhere.
+     */
+    private class JarPackages extends HashSet<String> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean add(String pkg) {
+            boolean added = super.add(pkg);
+            if(added)
+                packagesChanged();
+            return added;
+        }
+        
+        @Override
+        public boolean remove(Object pkg) {
+            boolean removed = super.remove(pkg);
+            if(removed)
+                packagesChanged();
+            return removed;
+        }
+        
+        @Override
+        public void clear() {
+            super.clear();
+            packagesChanged();
+        }
+    }
+
     public void addPackage(Package pkg){
         // make sure we don't call any overloaded getPackages() that might trigger lazy loading
         super.getPackages().add(pkg);
@@ -1,17 +1,19 @@
 package com.redhat.ceylon.model.loader.model;
 
+import static com.redhat.ceylon.model.typechecker.model.ModelUtil.getMatchingCandidates;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.lookupMember;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.lookupMemberForBackend;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.redhat.ceylon.common.Backends;
 import com.redhat.ceylon.common.JVMModuleUtil;
@@ -21,11 +23,13 @@ import com.redhat.ceylon.model.loader.ModelLoader.DeclarationType;
 import com.redhat.ceylon.model.loader.mirror.ClassMirror;
 import com.redhat.ceylon.model.typechecker.model.Class;
 import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.MemberList;
 import com.redhat.ceylon.model.typechecker.model.Module;
 import com.redhat.ceylon.model.typechecker.model.Package;
 import com.redhat.ceylon.model.typechecker.model.Type;
 import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
 import com.redhat.ceylon.model.typechecker.model.Unit;
+import com.redhat.ceylon.model.typechecker.model.Value;
 
 /**
  * Represents a lazy Package declaration.
@@ -35,9 +39,16 @@ import com.redhat.ceylon.model.typechecker.model.Unit;
 public class LazyPackage extends Package {
     
     private AbstractModelLoader modelLoader;
-    private List<Declaration> compiledDeclarations = new ArrayList<Declaration>(3);
+    private List<Declaration> compiledDeclarations = new MemberList(3);
     private Set<Unit> lazyUnits = new HashSet<Unit>();
-    private Map<String,Declaration> cache = new HashMap<String,Declaration>();
+    // need a special value for null because ConcurrentHashMap does not support null
+    private static final Declaration NULL_DECLARATION = new Value();
+    // concurrent because it is read without taking the model loader lock
+    private Map<String,Declaration> cache = new ConcurrentHashMap<String,Declaration>();
+    // once frozen, immutable snapshots of our units and members, which are read without the model loader lock.
+    // they are assigned before Package.freeze() sets its volatile flag, which publishes them
+    private List<Unit> frozenUnits;
+    private List<Declaration> frozenMembers;
     
     public LazyPackage(AbstractModelLoader modelLoader){
         this.modelLoader = modelLoader;
@@ -55,8 +66,10 @@ public class LazyPackage extends Package {
 //        System.err.println("getMember "+name+" "+signature+" "+ellipsis);
         boolean canCache = (signature == null && !ellipsis);
         if(canCache){
-            if(cache.containsKey(name)) {
-                Declaration cachedDeclaration = cache.get(name);
+            Declaration cachedDeclaration = cache.get(name);
+            if(cachedDeclaration != null) {
+                if(cachedDeclaration == NULL_DECLARATION)
+                    cachedDeclaration = null;
                 if (! modelLoader.searchAgain(cachedDeclaration, this, name)) {
                     return cachedDeclaration;
                 }
@@ -65,7 +78,7 @@ public class LazyPackage extends Package {
         }
         Declaration ret = getDirectMemberMemoised(name, signature, ellipsis, Backends.ANY);
         if(canCache){
-            cache.put(name, ret);
+            cache.put(name, ret != null ? ret : NULL_DECLARATION);
         }
         return ret;
     }
@@ -78,6 +91,16 @@ public class LazyPackage extends Package {
     }
     
     private Declaration getDirectMemberMemoised(String name, List<Type> signature, boolean ellipsis, Backends backends) {
+        if(isFrozen()){
+            // every member of a frozen package is already loaded, and nothing can change, so we don't need the lock
+            Declaration d = !backends.none()
+                    ? lookupMemberForBackend(compiledDeclarations, name, backends)
+                    : lookupMember(compiledDeclarations, name, signature, ellipsis);
+            if (d != null) {
+                return d;
+            }
+            return getDirectMemberFromSource(name, backends);
+        }
         synchronized(modelLoader.getLock()){
 
             String pkgName = getQualifiedNameString();
@@ -172,6 +195,8 @@ public class LazyPackage extends Package {
     // FIXME: redo this method better: https://github.com/ceylon/ceylon-spec/issues/90
     @Override
     public List<Declaration> getMembers() {
+        if(isFrozen())
+            return frozenMembers;
         synchronized(modelLoader.getLock()){
             // make sure the package is loaded
             modelLoader.loadPackage(getModule(), getQualifiedNameString(), true);
@@ -183,6 +208,25 @@ public class LazyPackage extends Package {
         }
     }
 
+    @Override
+    public List<Declaration> getMatchingMembers(String startingWith) {
+        if(isFrozen())
+            return getMatchingCandidates(frozenMembers, startingWith);
+        synchronized(modelLoader.getLock()){
+            // make sure the package is loaded
+            modelLoader.loadPackage(getModule(), getQualifiedNameString(), true);
+            // only copy the members which might match, rather than all of them. Don't call
+            // super.getMatchingMembers() since it would go through our getMembers(), which
+            // copies every source and compiled member
+            List<Declaration> sourceDeclarations = getMatchingCandidates(super.getMembers(), startingWith);
+            List<Declaration> compiledCandidates = getMatchingCandidates(compiledDeclarations, startingWith);
+            List<Declaration> ret = new ArrayList<Declaration>(sourceDeclarations.size() + compiledCandidates.size());
+            ret.addAll(sourceDeclarations);
+            ret.addAll(compiledCandidates);
+            return ret;
+        }
+    }
+
     @Override
     public void addMember(Declaration declaration) {
         super.addMember(declaration);
@@ -191,10 +235,12 @@ public class LazyPackage extends Package {
     
     private void flushCache(Declaration declaration) {
         cache.remove(declaration.getName());
+        membersChanged();
     }
 
     public void addCompiledMember(Declaration d) {
         synchronized(modelLoader.getLock()){
+            checkNotFrozen();
             flushCache(d);
             compiledDeclarations.add(d);
             if (d instanceof LazyInterface
@@ -239,6 +285,8 @@ public class LazyPackage extends Package {
 
     @Override
     public Iterable<Unit> getUnits() {
+        if(isFrozen())
+            return frozenUnits;
         synchronized(modelLoader.getLock()){
             Iterable<Unit> sourceUnits = super.getUnits();
             LinkedList<Unit> ret = new LinkedList<Unit>();
@@ -253,6 +301,7 @@ public class LazyPackage extends Package {
     @Override
     public void removeUnit(Unit unit) {
         synchronized(modelLoader.getLock()){
+            checkNotFrozen();
             for (Declaration d : unit.getDeclarations()) {
                 flushCache(d);
                 if (d instanceof TypeDeclaration) {
@@ -271,4 +320,36 @@ public class LazyPackage extends Package {
             }
         }
     }
+
+    /**
+     * Loads every declaration of this package, then freezes it, so that its members and units are
+     * served from immutable snapshots, without taking the model loader lock.
+     */
+    @Override
+    public void freeze() {
+        synchronized(modelLoader.getLock()){
+            if(isFrozen())
+                return;
+            // make sure the package is loaded
+            modelLoader.loadPackage(getModule(), getQualifiedNameString(), true);
+            for(Unit unit : lazyUnits){
+                unit.freeze();
+            }
+            ((MemberList)compiledDeclarations).freeze();
+            List<Declaration> sourceDeclarations = super.getMembers();
+            MemberList members = new MemberList(sourceDeclarations.size() + compiledDeclarations.size());
+            members.addAll(sourceDeclarations);
+            members.addAll(compiledDeclarations);
+            members.freeze();
+            List<Unit> units = new ArrayList<Unit>();
+            for (Unit unit : super.getUnits()) {
+                units.add(unit);
+            }
+            units.addAll(lazyUnits);
+            frozenUnits = Collections.unmodifiableList(units);
+            frozenMembers = members;
+            // last, since this is what makes us frozen
+            super.freeze();
+        }
+    }
 }
@@ -35,7 +35,8 @@ public class LazyValue extends Value implements LazyElement, LocalDeclarationCon
     private Map<String,Declaration> localDeclarations;
 
     private boolean isLoaded = false;
-    private boolean isLoaded2 = false;
+    // volatile so that completed declarations can be read without taking the completer lock
+    private volatile boolean isLoaded2 = false;
 
     @Override
     protected Class<?> getModelClass() {
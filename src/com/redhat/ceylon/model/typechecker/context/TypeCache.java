@@ -1,23 +1,63 @@
 package com.redhat.ceylon.model.typechecker.context;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.redhat.ceylon.model.typechecker.model.IntersectionType;
+import com.redhat.ceylon.model.typechecker.model.SiteVariance;
 import com.redhat.ceylon.model.typechecker.model.Type;
 import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.TypeParameter;
+import com.redhat.ceylon.model.typechecker.model.TypeParameterMap;
+import com.redhat.ceylon.model.typechecker.model.UnionType;
+import com.redhat.ceylon.model.typechecker.model.Unit;
 import com.redhat.ceylon.model.typechecker.model.UnknownType;
 
+/**
+ * Per-module cache of supertype lookups, of the results 
+ * of subtyping and exact equality checks, of the 
+ * canonical unions and intersections of types, of the
+ * principal instantiations of pairs of types, and of
+ * the printed representations of types. 
+ * 
+ * The cache is bounded: once it holds more than its 
+ * maximum number of types, pairs of types, unions or
+ * intersections, principal instantiations, or printed 
+ * types, the least recently used quarter of them are 
+ * evicted. Every cached entry 
+ * is indexed by the declarations it involves, so that 
+ * invalidating a declaration only evicts the entries 
+ * which involve it or one of its subtypes.
+ */
 public class TypeCache {
     
     private static boolean cachingEnabledByDefault = true;
     
+    private static int defaultMaximumSize = 20000;
+    
     public static void setEnabledByDefault(boolean enabled) {
         cachingEnabledByDefault = enabled;
     }
     
+    /**
+     * Sets the maximum number of types cached by new 
+     * caches, or 0 for unbounded caches.
+     */
+    public static void setDefaultMaximumSize(int size) {
+        defaultMaximumSize = size;
+    }
+    
     private static final ThreadLocal<Boolean> cachingEnabled = 
             new ThreadLocal<Boolean>();
     
@@ -80,57 +120,878 @@ public class TypeCache {
     
     // need a special value for null because ConcurrentHashMap does not support null
     private final static Type NULL_VALUE = new UnknownType(null).getType();
+    
+    /**
+     * A cache entry, along with the generation of its last 
+     * use.
+     */
+    private static abstract class Entry {
+        volatile long generation;
+        Entry(long generation) {
+            this.generation = generation;
+        }
+    }
+    
+    /**
+     * The supertypes cached for a type.
+     */
+    private static final class SupertypesEntry extends Entry {
+        // need ConcurrentHashMap even for the cache, otherwise get/put/containsKey can get info infinite loops
+        // on concurrent operations
+        final Map<TypeDeclaration, Type> superTypes = 
+                new ConcurrentHashMap<TypeDeclaration, Type>();
+        SupertypesEntry(long generation) {
+            super(generation);
+        }
+    }
+    
+    /**
+     * The cached result of a subtyping or exact equality 
+     * check.
+     */
+    private static final class RelationEntry extends Entry {
+        final boolean holds;
+        RelationEntry(long generation, boolean holds) {
+            super(generation);
+            this.holds = holds;
+        }
+    }
+    
+    /**
+     * A subtyping or exact equality check between a pair 
+     * of types. The key of a cached check holds 
+     * {@link Type#snapshot() snapshots} of the types, 
+     * since the caller might go on to modify them.
+     */
+    private static final class Relation {
+        final Type type;
+        final Type otherType;
+        final boolean exactly;
+        final int hash;
+        Relation(Type type, Type otherType, boolean exactly) {
+            this.type = type;
+            this.otherType = otherType;
+            this.exactly = exactly;
+            int h = 31 * type.hashCode() + otherType.hashCode();
+            this.hash = exactly ? ~h : h;
+        }
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Relation)) {
+                return false;
+            }
+            Relation other = (Relation) obj;
+            return hash == other.hash &&
+                    exactly == other.exactly &&
+                    type.equals(other.type) &&
+                    otherType.equals(other.otherType);
+        }
+    }
+    
+    /**
+     * The cached canonical union or intersection of a list
+     * of types. We keep {@link Type#snapshot() snapshots}
+     * of its cases, rather than the union or intersection 
+     * itself, and form a new one, belonging to the 
+     * caller's compilation unit, on every hit, since the 
+     * caller might go on to modify its list of cases.
+     */
+    private static final class CombinationEntry extends Entry {
+        final TypeDeclaration declaration;
+        final List<Type> caseTypes;
+        final List<Type> satisfiedTypes;
+        CombinationEntry(long generation, TypeDeclaration combination) {
+            super(generation);
+            if (combination instanceof UnionType) {
+                declaration = null;
+                caseTypes = 
+                        Type.snapshot(combination.getCaseTypes());
+                satisfiedTypes = null;
+            }
+            else if (combination instanceof IntersectionType) {
+                declaration = null;
+                caseTypes = null;
+                satisfiedTypes = 
+                        Type.snapshot(combination.getSatisfiedTypes());
+            }
+            else {
+                declaration = combination;
+                caseTypes = null;
+                satisfiedTypes = null;
+            }
+        }
+        TypeDeclaration getCombination(Unit unit) {
+            if (caseTypes!=null) {
+                UnionType ut = new UnionType(unit);
+                ut.setCaseTypes(new ArrayList<Type>(caseTypes));
+                return ut;
+            }
+            else if (satisfiedTypes!=null) {
+                IntersectionType it = new IntersectionType(unit);
+                it.setSatisfiedTypes(
+                        new ArrayList<Type>(satisfiedTypes));
+                return it;
+            }
+            else {
+                return declaration;
+            }
+        }
+    }
+    
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int CANONICAL_INTERSECTION = 2;
+    
+    /**
+     * A union or intersection of a list of types. The 
+     * order of the types matters, since it determines the 
+     * order of the cases of the resulting union or 
+     * intersection. The key of a cached union or 
+     * intersection holds {@link Type#snapshot() snapshots}
+     * of the types.
+     */
+    private static final class Combination {
+        final int kind;
+        final Type[] types;
+        final int hash;
+        Combination(int kind, Type... types) {
+            this.kind = kind;
+            this.types = types;
+            this.hash = 31 * Arrays.hashCode(types) + kind;
+        }
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Combination)) {
+                return false;
+            }
+            Combination other = (Combination) obj;
+            return hash == other.hash &&
+                    kind == other.kind &&
+                    Arrays.equals(types, other.types);
+        }
+    }
+    
+    /**
+     * The cached principal instantiation of a pair of 
+     * instantiations of a generic type. We keep 
+     * {@link Type#snapshot() snapshots} of the qualifying 
+     * type and type arguments, and the use-site variances 
+     * it was formed from, rather than the type itself, and 
+     * form a new type on every hit, since the caller might 
+     * go on to modify it.
+     */
+    private static final class InstantiationEntry extends Entry {
+        final Type qualifyingType;
+        final List<Type> typeArguments;
+        final Map<TypeParameter,SiteVariance> varianceOverrides;
+        InstantiationEntry(long generation, Type type) {
+            super(generation);
+            Type qualifyingType = type.getQualifyingType();
+            this.qualifyingType = 
+                    qualifyingType==null ? null : 
+                        qualifyingType.snapshot();
+            this.typeArguments = 
+                    Type.snapshot(type.getTypeArgumentList());
+            this.varianceOverrides = 
+                    new TypeParameterMap<SiteVariance>(
+                            type.getVarianceOverrides());
+        }
+        Type getType(TypeDeclaration dec) {
+            Type type = 
+                    dec.appliedType(qualifyingType, 
+                            typeArguments);
+            type.setVarianceOverrides(
+                    new TypeParameterMap<SiteVariance>(
+                            varianceOverrides));
+            return type;
+        }
+    }
+    
+    /**
+     * A pair of instantiations of a generic type. The key
+     * of a cached principal instantiation holds 
+     * {@link Type#snapshot() snapshots} of them.
+     */
+    private static final class Instantiations {
+        final TypeDeclaration dec;
+        final Type first;
+        final Type second;
+        final int hash;
+        Instantiations(TypeDeclaration dec, Type first, Type second) {
+            this.dec = dec;
+            this.first = first;
+            this.second = second;
+            this.hash = 31 * (31 * dec.hashCode() + 
+                    first.hashCode()) + second.hashCode();
+        }
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Instantiations)) {
+                return false;
+            }
+            Instantiations other = (Instantiations) obj;
+            return hash == other.hash &&
+                    dec.equals(other.dec) &&
+                    first.equals(other.first) &&
+                    second.equals(other.second);
+        }
+    }
+    
+    /**
+     * The cached printed representation of a type.
+     */
+    private static final class PrintedEntry extends Entry {
+        final String string;
+        PrintedEntry(long generation, String string) {
+            super(generation);
+            this.string = string;
+        }
+    }
+    
+    /**
+     * A type printed in a certain format, in the context
+     * of the imports of a certain compilation unit. The
+     * {@link Unit#getImportsVersion() version} of its 
+     * imports tells us if an import has been added, 
+     * removed, or given a new alias since the type was 
+     * printed. The key of a cached representation holds a
+     * {@link Type#snapshot() snapshot} of the type.
+     */
+    private static final class Printed {
+        final int format;
+        final Type type;
+        final Unit unit;
+        final int importsVersion;
+        final int hash;
+        Printed(int format, Type type, Unit unit) {
+            this.format = format;
+            this.type = type;
+            this.unit = unit;
+            this.importsVersion = 
+                    unit==null ? 0 : unit.getImportsVersion();
+            this.hash = 
+                    31 * (31 * type.hashCode() + format) + 
+                    System.identityHashCode(unit) + importsVersion;
+        }
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Printed)) {
+                return false;
+            }
+            Printed other = (Printed) obj;
+            return hash == other.hash &&
+                    format == other.format &&
+                    unit == other.unit &&
+                    importsVersion == other.importsVersion &&
+                    type.equals(other.type);
+        }
+    }
+    
     // need ConcurrentHashMap even for the cache, otherwise get/put/containsKey can get info infinite loops
     // on concurrent operations
-    private final Map<Type, Map<TypeDeclaration, Type>> superTypes = 
-            new ConcurrentHashMap<Type, Map<TypeDeclaration, Type>>();
+    private final Map<Type, SupertypesEntry> superTypes = 
+            new ConcurrentHashMap<Type, SupertypesEntry>();
+    
+    private final Map<Relation, RelationEntry> relations = 
+            new ConcurrentHashMap<Relation, RelationEntry>();
+    
+    private final Map<Combination, CombinationEntry> combinations = 
+            new ConcurrentHashMap<Combination, CombinationEntry>();
+    
+    private final Map<Printed, PrintedEntry> printed = 
+            new ConcurrentHashMap<Printed, PrintedEntry>();
+    
+    private final Map<Instantiations, InstantiationEntry> instantiations = 
+            new ConcurrentHashMap<Instantiations, InstantiationEntry>();
+    
+    // small numbers identifying the type declarations of 
+    // the module, which index memoised sets of supertype
+    // declarations. They're forgotten along with the rest
+    // of the cache, so that we don't hold on to replaced
+    // declarations, and every time they're forgotten the
+    // epoch changes, so that ordinals assigned before are
+    // known to be stale
+    private final ConcurrentMap<TypeDeclaration, Integer> ordinals = 
+            new ConcurrentHashMap<TypeDeclaration, Integer>();
+    private final AtomicInteger nextOrdinal = new AtomicInteger();
+    private final AtomicInteger ordinalsEpoch = new AtomicInteger();
+    
+    // incremented after the supertypes of any declaration
+    // change, and after any cache forgets its ordinals, so
+    // that a memoised set of supertype declarations which
+    // was current as of the same stamp is still current
+    private static final AtomicInteger supertypesStamp = 
+            new AtomicInteger();
+    
+    // how often a principal instantiation was found in the 
+    // cache, and how often it had to be computed
+    private final AtomicLong instantiationHits = new AtomicLong();
+    private final AtomicLong instantiationMisses = new AtomicLong();
+    
+    // reverse index from a declaration to the cached types, 
+    // pairs of types, unions and intersections, principal
+    // instantiations, and printed types, which involve it
+    private final Map<TypeDeclaration, Set<Object>> dependentTypes = 
+            new ConcurrentHashMap<TypeDeclaration, Set<Object>>();
+    
+    // advanced on every new entry, used to find the least 
+    // recently used entries
+    private final AtomicLong generation = new AtomicLong();
+    
+    private final Object evictionLock = new Object();
+    
+    private final int maximumSize;
+    
+    public TypeCache() {
+        this(defaultMaximumSize);
+    }
+    
+    /**
+     * @param maximumSize the maximum number of types to 
+     *        cache, or 0 for an unbounded cache
+     */
+    public TypeCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+    
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+    
+    /**
+     * The number of types for which we have cached 
+     * supertypes.
+     */
+    public int size() {
+        return superTypes.size();
+    }
+    
+    /**
+     * The number of pairs of types for which we have 
+     * cached the result of a subtyping or exact equality 
+     * check.
+     */
+    public int getRelationCount() {
+        return relations.size();
+    }
+    
+    /**
+     * The number of unions and intersections of types we 
+     * have cached.
+     */
+    public int getCombinationCount() {
+        return combinations.size();
+    }
+    
+    /**
+     * The number of printed representations of types we 
+     * have cached.
+     */
+    public int getPrintedCount() {
+        return printed.size();
+    }
+    
+    /**
+     * The number of principal instantiations we have 
+     * cached.
+     */
+    public int getPrincipalInstantiationCount() {
+        return instantiations.size();
+    }
+    
+    /**
+     * The number of lookups of a principal instantiation 
+     * which found it in the cache, since the cache was 
+     * created.
+     */
+    public long getPrincipalInstantiationHits() {
+        return instantiationHits.get();
+    }
+    
+    /**
+     * The number of lookups of a principal instantiation 
+     * which did not find it in the cache, since the cache 
+     * was created.
+     */
+    public long getPrincipalInstantiationMisses() {
+        return instantiationMisses.get();
+    }
+    
+    private SupertypesEntry getEntry(Type producedType) {
+        SupertypesEntry entry = superTypes.get(producedType);
+        if (entry != null) {
+            entry.generation = generation.get();
+        }
+        return entry;
+    }
     
     public boolean containsKey(Type producedType, TypeDeclaration dec) {
-        Map<TypeDeclaration, Type> cache = superTypes.get(producedType);
-        if (cache == null) {
+        SupertypesEntry entry = getEntry(producedType);
+        if (entry == null) {
             return false;
         }
-        return cache.containsKey(dec);
+        return entry.superTypes.containsKey(dec);
     }
 
     public Type get(Type producedType, TypeDeclaration dec) {
-        Map<TypeDeclaration, Type> cache = superTypes.get(producedType);
-        if (cache == null) {
+        SupertypesEntry entry = getEntry(producedType);
+        if (entry == null) {
             return null;
         }
-        Type ret = cache.get(dec);
+        Type ret = entry.superTypes.get(dec);
         return ret == NULL_VALUE ? null : ret;
     }
 
     public void put(Type producedType, TypeDeclaration dec, Type superType) {
-        Map<TypeDeclaration, Type> cache = superTypes.get(producedType);
-        if (cache == null) {
-            // need ConcurrentHashMap even for the cache, otherwise get/put/containsKey can get info infinite loops
-            // on concurrent operations
-            cache = new ConcurrentHashMap<TypeDeclaration, Type>();
-            superTypes.put(producedType, cache);
+        SupertypesEntry entry = getEntry(producedType);
+        if (entry == null) {
+            entry = new SupertypesEntry(generation.incrementAndGet());
+            superTypes.put(producedType, entry);
+            index(producedType, producedType);
+            if (maximumSize > 0 && 
+                    superTypes.size() > maximumSize) {
+                evict(superTypes);
+            }
         }
         if (superType == null) {
             superType = NULL_VALUE;
         }
-        cache.put(dec, superType);
+        entry.superTypes.put(dec, superType);
+        addDependentType(dec, producedType);
+    }
+
+    /**
+     * Returns the cached result of checking if the first 
+     * type is a subtype of the second type, or null if it 
+     * is not cached.
+     */
+    public Boolean isSubtype(Type type, Type supertype) {
+        return getRelation(new Relation(type, supertype, false));
+    }
+    
+    public void putSubtype(Type type, Type supertype, boolean subtype) {
+        putRelation(new Relation(type.snapshot(), 
+                supertype.snapshot(), false), subtype);
+    }
+    
+    /**
+     * Returns the cached result of checking if the given 
+     * types are exactly the same type, or null if it is not 
+     * cached.
+     */
+    public Boolean isExactly(Type type, Type otherType) {
+        return getRelation(new Relation(type, otherType, true));
+    }
+    
+    public void putExactly(Type type, Type otherType, boolean exactly) {
+        putRelation(new Relation(type.snapshot(), 
+                otherType.snapshot(), true), exactly);
+    }
+    
+    private Boolean getRelation(Relation relation) {
+        RelationEntry entry = relations.get(relation);
+        if (entry == null) {
+            return null;
+        }
+        entry.generation = generation.get();
+        return entry.holds;
+    }
+    
+    private void putRelation(Relation relation, boolean holds) {
+        RelationEntry entry = 
+                new RelationEntry(generation.incrementAndGet(), holds);
+        if (relations.put(relation, entry) == null) {
+            index(relation.type, relation);
+            index(relation.otherType, relation);
+            if (maximumSize > 0 && 
+                    relations.size() > maximumSize) {
+                evict(relations);
+            }
+        }
+    }
+    
+    /**
+     * Returns the cached canonical union of the given 
+     * types, as formed by <code>ModelUtil.unionType()</code>,
+     * or null if it is not cached. Every hit returns a new
+     * union belonging to the given compilation unit.
+     */
+    public TypeDeclaration getUnion(Type lhs, Type rhs, Unit unit) {
+        return getCombination(new Combination(UNION, lhs, rhs), 
+                unit);
+    }
+    
+    public void putUnion(Type lhs, Type rhs, TypeDeclaration union) {
+        putCombination(new Combination(UNION, 
+                lhs.snapshot(), rhs.snapshot()), union);
+    }
+    
+    /**
+     * Returns the cached canonical intersection of the 
+     * given types, as formed by 
+     * <code>ModelUtil.intersectionType()</code>, or null if
+     * it is not cached. Every hit returns a new 
+     * intersection belonging to the given compilation unit.
+     */
+    public TypeDeclaration getIntersection(Type lhs, Type rhs, 
+            Unit unit) {
+        return getCombination(new Combination(INTERSECTION, lhs, rhs), 
+                unit);
+    }
+    
+    public void putIntersection(Type lhs, Type rhs, 
+            TypeDeclaration intersection) {
+        putCombination(new Combination(INTERSECTION, 
+                lhs.snapshot(), rhs.snapshot()), 
+                intersection);
+    }
+    
+    /**
+     * Returns the cached canonicalized intersection of 
+     * the given list of types, as formed by 
+     * <code>ModelUtil.canonicalIntersection()</code>, or 
+     * null if it is not cached. Every hit returns a new 
+     * intersection belonging to the given compilation unit.
+     */
+    public TypeDeclaration getCanonicalIntersection(List<Type> types, 
+            Unit unit) {
+        return getCombination(new Combination(CANONICAL_INTERSECTION, 
+                types.toArray(new Type[types.size()])), 
+                unit);
+    }
+    
+    public void putCanonicalIntersection(List<Type> types, 
+            TypeDeclaration intersection) {
+        List<Type> snapshots = Type.snapshot(types);
+        putCombination(new Combination(CANONICAL_INTERSECTION, 
+                snapshots.toArray(new Type[snapshots.size()])), 
+                intersection);
+    }
+    
+    private TypeDeclaration getCombination(Combination combination, 
+            Unit unit) {
+        CombinationEntry entry = combinations.get(combination);
+        if (entry == null) {
+            return null;
+        }
+        entry.generation = generation.get();
+        return entry.getCombination(unit);
+    }
+    
+    private void putCombination(Combination combination, 
+            TypeDeclaration result) {
+        CombinationEntry entry = 
+                new CombinationEntry(generation.incrementAndGet(), result);
+        if (combinations.put(combination, entry) == null) {
+            for (Type type: combination.types) {
+                index(type, combination);
+            }
+            if (maximumSize > 0 && 
+                    combinations.size() > maximumSize) {
+                evict(combinations);
+            }
+        }
+    }
+    
+    /**
+     * Returns the cached principal instantiation of the 
+     * given generic type which is a supertype of both the 
+     * given instantiations of it, as formed by 
+     * <code>ModelUtil.principalInstantiation()</code>, or
+     * null if it is not cached. Every hit returns a new 
+     * instance of the type.
+     */
+    public Type getPrincipalInstantiation(TypeDeclaration dec, 
+            Type first, Type second) {
+        InstantiationEntry entry = 
+                instantiations.get(new Instantiations(dec, first, second));
+        if (entry == null) {
+            instantiationMisses.incrementAndGet();
+            return null;
+        }
+        instantiationHits.incrementAndGet();
+        entry.generation = generation.get();
+        return entry.getType(dec);
+    }
+    
+    /**
+     * Caches the principal instantiation of the given
+     * generic type, which must be an application of the 
+     * type itself, and must not involve unknown types, 
+     * which belong to a particular compilation unit.
+     */
+    public void putPrincipalInstantiation(TypeDeclaration dec, 
+            Type first, Type second, Type instantiation) {
+        Instantiations key = 
+                new Instantiations(dec, 
+                        first.snapshot(), second.snapshot());
+        InstantiationEntry entry = 
+                new InstantiationEntry(generation.incrementAndGet(), 
+                        instantiation);
+        if (instantiations.put(key, entry) == null) {
+            addDependentType(dec, key);
+            index(first, key);
+            index(second, key);
+            if (maximumSize > 0 && 
+                    instantiations.size() > maximumSize) {
+                evict(instantiations);
+            }
+        }
+    }
+    
+    /**
+     * Returns the cached representation of the given type
+     * in the given format, as printed in the context of 
+     * the given compilation unit, or null if it is not 
+     * cached.
+     * 
+     * @param format identifies the way the type was 
+     *        printed
+     * @param unit the compilation unit whose imports
+     *        determine the names of declarations, or null
+     */
+    public String getPrinted(int format, Type type, Unit unit) {
+        PrintedEntry entry = 
+                printed.get(new Printed(format, type, unit));
+        if (entry == null) {
+            return null;
+        }
+        entry.generation = generation.get();
+        return entry.string;
+    }
+    
+    public void putPrinted(int format, Type type, Unit unit, 
+            String string) {
+        Printed key = new Printed(format, type.snapshot(), unit);
+        PrintedEntry entry = 
+                new PrintedEntry(generation.incrementAndGet(), string);
+        if (printed.put(key, entry) == null) {
+            index(type, key);
+            if (maximumSize > 0 && 
+                    printed.size() > maximumSize) {
+                evict(printed);
+            }
+        }
+    }
+    
+    /**
+     * Records the given cached entry as depending on every 
+     * declaration involved in the given type.
+     */
+    private void index(Type type, Object cachedType) {
+        if (type == null) {
+            return;
+        }
+        TypeDeclaration dec = type.getDeclaration();
+        if (type.isUnion()) {
+            for (Type ct: dec.getCaseTypes()) {
+                index(ct, cachedType);
+            }
+        }
+        else if (type.isIntersection()) {
+            for (Type st: dec.getSatisfiedTypes()) {
+                index(st, cachedType);
+            }
+        }
+        else {
+            addDependentType(dec, cachedType);
+            for (Type ta: type.getTypeArguments().values()) {
+                index(ta, cachedType);
+            }
+            index(type.getQualifyingType(), cachedType);
+        }
+    }
+
+    private void addDependentType(TypeDeclaration dec, Object cachedType) {
+        if (dec == null) {
+            return;
+        }
+        Set<Object> types = dependentTypes.get(dec);
+        if (types == null) {
+            types = Collections.newSetFromMap(
+                    new ConcurrentHashMap<Object, Boolean>());
+            dependentTypes.put(dec, types);
+        }
+        types.add(cachedType);
+    }
+    
+    /**
+     * Evicts the least recently used quarter of the given 
+     * entries.
+     */
+    private void evict(Map<?, ? extends Entry> entries) {
+        synchronized (evictionLock) {
+            int size = entries.size();
+            if (size <= maximumSize) {
+                // another thread beat us to it
+                return;
+            }
+            long[] generations = new long[size];
+            int i = 0;
+            for (Entry entry: entries.values()) {
+                if (i == generations.length) {
+                    break;
+                }
+                generations[i++] = entry.generation;
+            }
+            Arrays.sort(generations, 0, i);
+            long threshold = generations[i/4];
+            for (Map.Entry<?, ? extends Entry> entry: 
+                    entries.entrySet()) {
+                if (entry.getValue().generation <= threshold) {
+                    entries.remove(entry.getKey());
+                }
+            }
+            // now forget about the evicted entries
+            for (Map.Entry<TypeDeclaration, Set<Object>> entry: 
+                    dependentTypes.entrySet()) {
+                Set<Object> types = entry.getValue();
+                for (Iterator<Object> it = types.iterator(); 
+                        it.hasNext();) {
+                    Object type = it.next();
+                    if (!superTypes.containsKey(type) && 
+                            !relations.containsKey(type) &&
+                            !combinations.containsKey(type) &&
+                            !instantiations.containsKey(type) &&
+                            !printed.containsKey(type)) {
+                        it.remove();
+                    }
+                }
+                if (types.isEmpty()) {
+                    dependentTypes.remove(entry.getKey());
+                }
+            }
+        }
     }
 
     public void clear(){
         superTypes.clear();
+        relations.clear();
+        combinations.clear();
+        instantiations.clear();
+        printed.clear();
+        dependentTypes.clear();
+        clearOrdinals();
+    }
+    
+    private void clearOrdinals() {
+        ordinals.clear();
+        ordinalsEpoch.incrementAndGet();
+        supertypesChanged();
+    }
+    
+    /**
+     * Incremented every time the extended or satisfied
+     * types of any declaration change, or any cache 
+     * forgets its ordinals.
+     */
+    public static int getSupertypesStamp() {
+        return supertypesStamp.get();
+    }
+    
+    /**
+     * Called after the extended or satisfied types of a 
+     * declaration change.
+     */
+    public static void supertypesChanged() {
+        supertypesStamp.incrementAndGet();
+    }
+    
+    /**
+     * A small number identifying the given type declaration
+     * of this module, used to index sets of supertype 
+     * declarations. Equal declarations are assigned the 
+     * same ordinal, until the cache is cleared, which 
+     * changes the {@link #getOrdinalsEpoch() epoch}.
+     */
+    public int getOrdinal(TypeDeclaration declaration) {
+        Integer ordinal = ordinals.get(declaration);
+        if (ordinal == null) {
+            Integer next = nextOrdinal.getAndIncrement();
+            ordinal = ordinals.putIfAbsent(declaration, next);
+            if (ordinal == null) {
+                ordinal = next;
+            }
+        }
+        return ordinal;
+    }
+    
+    /**
+     * Incremented every time the ordinals of declarations
+     * are forgotten.
+     */
+    public int getOrdinalsEpoch() {
+        return ordinalsEpoch.get();
     }
 
+    /**
+     * Evicts every cached entry which involves the given 
+     * declaration, or one of its subtypes, since their 
+     * supertypes might change along with it.
+     */
     public void clearForDeclaration(TypeDeclaration decl) {
-        // clear the whole cache for now, unless I can figure out exactly what to
-        // clear
-        clear();
+        if (decl == null) {
+            clear();
+            return;
+        }
+        try {
+            for (Map.Entry<TypeDeclaration, Set<Object>> entry: 
+                    dependentTypes.entrySet()) {
+                TypeDeclaration dec = entry.getKey();
+                if (dec.equals(decl) || dec.inherits(decl)) {
+                    for (Object type: entry.getValue()) {
+                        superTypes.remove(type);
+                        relations.remove(type);
+                        combinations.remove(type);
+                        instantiations.remove(type);
+                        printed.remove(type);
+                    }
+                    dependentTypes.remove(dec);
+                }
+            }
+            clearOrdinals();
+        }
+        catch (RuntimeException e) {
+            // the model is inconsistent while it is being
+            // modified, so play it safe
+            clear();
+        }
     }
     
     public void clearNullValues() {
         List<Type> cachesToremove = new LinkedList<Type>();
-        for (Map.Entry<Type, Map<TypeDeclaration, Type>> entry: 
+        for (Map.Entry<Type, SupertypesEntry> entry: 
                 superTypes.entrySet()) {
-            Map<TypeDeclaration, Type> cache = entry.getValue();
+            Map<TypeDeclaration, Type> cache = 
+                    entry.getValue().superTypes;
             if (cache == null) {
                 cachesToremove.add(entry.getKey());
             }
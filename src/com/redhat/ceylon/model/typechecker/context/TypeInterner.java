@@ -0,0 +1,85 @@
+package com.redhat.ceylon.model.typechecker.context;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.redhat.ceylon.model.typechecker.model.Type;
+
+/**
+ * Per-module intern table for {@link Type}s, used by
+ * {@link Type#intern()} to make equal types reference-
+ * identical. Interning is opt-in, since interned types
+ * are shared, and so they can't be modified.
+ */
+public class TypeInterner {
+
+    private static boolean interningEnabledByDefault = false;
+
+    public static void setEnabledByDefault(boolean enabled) {
+        interningEnabledByDefault = enabled;
+    }
+
+    public static boolean isEnabledByDefault() {
+        return interningEnabledByDefault;
+    }
+
+    // 0 is reserved for types which are not interned
+    private static final AtomicInteger epochs =
+            new AtomicInteger();
+
+    /**
+     * A generation of the intern table. Canonical types
+     * record the epoch of the table they belong to, and
+     * since every table has its own epoch, two distinct
+     * canonical types with the same epoch can never be
+     * equal.
+     */
+    public static final class Table {
+
+        private final ConcurrentMap<Type,Type> types =
+                new ConcurrentHashMap<Type,Type>();
+        private final int epoch =
+                epochs.incrementAndGet();
+
+        /**
+         * @return the canonical type equal to the given
+         *         type, or null if there is none yet
+         */
+        public Type get(Type type) {
+            return types.get(type);
+        }
+
+        /**
+         * @return the canonical type equal to the given
+         *         type, or null if the given type just
+         *         became the canonical type
+         */
+        public Type putIfAbsent(Type type) {
+            return types.putIfAbsent(type, type);
+        }
+
+        public int getEpoch() {
+            return epoch;
+        }
+
+        public int size() {
+            return types.size();
+        }
+    }
+
+    private volatile Table table = new Table();
+
+    public Table getTable() {
+        return table;
+    }
+
+    /**
+     * Forgets every canonical type, for example because a
+     * declaration they involve has changed.
+     */
+    public void clear() {
+        table = new Table();
+    }
+
+}
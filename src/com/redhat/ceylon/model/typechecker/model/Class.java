@@ -6,7 +6,6 @@ import static java.util.Collections.singletonList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 
 
 public class Class extends ClassOrInterface implements Functional {
@@ -317,92 +316,87 @@ public class Class extends ClassOrInterface implements Functional {
     
     @Override
     public boolean isAnything() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Anything");
+        return getLanguageType()==LanguageType.ANYTHING;
     }
     
     @Override
     public boolean isObject() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Object");
+        return getLanguageType()==LanguageType.OBJECT;
     }
     
     @Override
     public boolean isNull() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Null");
+        return getLanguageType()==LanguageType.NULL;
     }
 
     @Override
     public boolean isNullValue() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::null");
+        return getLanguageType()==LanguageType.NULL_VALUE;
     }
 
     @Override
     boolean isEmptyValue() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::empty");
+        return getLanguageType()==LanguageType.EMPTY_VALUE;
+    }
+
+    @Override
+    boolean isTrueValue() {
+        return getLanguageType()==LanguageType.TRUE_VALUE;
+    }
+
+    @Override
+    boolean isFalseValue() {
+        return getLanguageType()==LanguageType.FALSE_VALUE;
     }
 
     @Override
     public boolean isBasic() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Basic");
+        return getLanguageType()==LanguageType.BASIC;
     }
 
     @Override
     public boolean isBoolean() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Boolean");
+        return getLanguageType()==LanguageType.BOOLEAN;
     }
 
     @Override
     public boolean isString() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::String");
+        return getLanguageType()==LanguageType.STRING;
     }
 
     @Override
     public boolean isCharacter() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Character");
+        return getLanguageType()==LanguageType.CHARACTER;
     }
 
     @Override
     public boolean isFloat() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Float");
+        return getLanguageType()==LanguageType.FLOAT;
     }
 
     @Override
     public boolean isInteger() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Integer");
+        return getLanguageType()==LanguageType.INTEGER;
     }
 
     @Override
     public boolean isByte() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Byte");
+        return getLanguageType()==LanguageType.BYTE;
     }
 
     @Override
     public boolean isTuple() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Tuple");
+        return getLanguageType()==LanguageType.TUPLE;
     }
     
     @Override
     public boolean isEntry() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Entry");
+        return getLanguageType()==LanguageType.ENTRY;
     }
     
     @Override
     public boolean isRange() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Range");
+        return getLanguageType()==LanguageType.RANGE;
     }
     
     @Override
@@ -429,8 +423,13 @@ public class Class extends ClassOrInterface implements Functional {
             return false;
         }
         else {
-            //TODO: optimize this to avoid walking the
-            //      same supertypes multiple times
+            if (dec instanceof ClassOrInterface) {
+                SupertypeDeclarations sds = 
+                        getMemoisedSupertypeDeclarations();
+                if (sds!=null) {
+                    return sds.contains(dec);
+                }
+            }
             Type et = getExtendedType();
             if (et!=null && 
                     et.getDeclaration().inherits(dec)) {
@@ -23,13 +23,12 @@ public class ClassAlias extends Class {
     public boolean isEmptyType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isEmptyType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -41,13 +40,12 @@ public class ClassAlias extends Class {
     public boolean isTupleType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isTupleType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -59,13 +57,12 @@ public class ClassAlias extends Class {
     public boolean isSequentialType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isSequentialType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -77,13 +74,12 @@ public class ClassAlias extends Class {
     public boolean isSequenceType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isSequenceType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -105,13 +101,12 @@ public class ClassAlias extends Class {
     public boolean inherits(TypeDeclaration dec) {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().inherits(dec);
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         return false;
@@ -9,9 +9,11 @@ import java.util.Objects;
 
 public abstract class ClassOrInterface extends TypeDeclaration {
 
-    private List<Declaration> members = new ArrayList<Declaration>(3);
+    private List<Declaration> members = new MemberList(3);
     private List<Annotation> annotations = new ArrayList<Annotation>(4);
     private List<TypeParameter> typeParameters = emptyList();
+    //memoised, like the qualified name it depends on
+    private LanguageType languageType;
     
     @Override
     public List<Annotation> getAnnotations() {
@@ -60,6 +62,24 @@ public abstract class ClassOrInterface extends TypeDeclaration {
         return !typeParameters.isEmpty();
     }
 
+    /**
+     * Which of the well-known classes and interfaces of 
+     * the language module this is, if any.
+     */
+    LanguageType getLanguageType() {
+        LanguageType type = languageType;
+        if (type==null) {
+            String qualifiedName = 
+                    getQualifiedNameString();
+            type = LanguageType.forQualifiedName(
+                    qualifiedName);
+            if (qualifiedName!=null) {
+                languageType = type;
+            }
+        }
+        return type;
+    }
+
     public List<TypeParameter> getTypeParameters() {
         return typeParameters;
     }
@@ -159,6 +179,11 @@ public abstract class ClassOrInterface extends TypeDeclaration {
         }
     }
     
+    @Override
+    boolean canMemoiseSupertypeDeclarations() {
+        return true;
+    }
+    
     @Override
     protected int hashCodeForCache() {
         int ret = 17;
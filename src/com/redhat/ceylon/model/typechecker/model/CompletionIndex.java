@@ -0,0 +1,262 @@
+package com.redhat.ceylon.model.typechecker.model;
+
+import static java.lang.Character.isLowerCase;
+import static java.lang.Character.isSurrogate;
+import static java.lang.Character.toLowerCase;
+import static java.lang.Character.toUpperCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index of the names and aliases of a list of members,
+ * for completion, so that finding the members which
+ * {@link ModelUtil#isNameMatching(String, String) match}
+ * what the user has typed so far doesn't need to scan
+ * every member of a package or scope with thousands of
+ * members.
+ *
+ * A name matches either if the prefix matches it,
+ * ignoring case, or if it matches its camel humps. So
+ * the index keeps two sorted arrays of keys:
+ *
+ * - every name, case folded, so that the names with a
+ *   given prefix, ignoring case, form a contiguous range,
+ *   and
+ * - the "humps" of every name, that is, its first
+ *   character, followed by every character after the
+ *   first which isn't lower case, so that, for example,
+ *   "InOuSt" may only match a name whose humps start
+ *   with "IOS", like "InputOutputStream".
+ *
+ * Names containing surrogate pairs are rare enough that
+ * they're just always candidates. Lookups must still
+ * check every member they return, since the index only
+ * narrows down the candidates.
+ *
+ * The index is a snapshot: {@link MemberList} rebuilds
+ * it whenever it has been modified, or any declaration
+ * has been given new aliases, since it was built.
+ *
+ * @see MemberList#getMatchingCandidates(String)
+ */
+final class CompletionIndex {
+
+    private final int modCount;
+    private final int aliasModifications;
+
+    private final Declaration[] members;
+
+    private final String[] foldedKeys;
+    private final int[] foldedPositions;
+    private final String[] humpKeys;
+    private final int[] humpPositions;
+
+    /**
+     * Positions of members with names we can't index.
+     */
+    private final int[] unindexedPositions;
+
+    CompletionIndex(List<Declaration> members,
+            int modCount, int aliasModifications) {
+        this.modCount = modCount;
+        this.aliasModifications = aliasModifications;
+        int size = members.size();
+        this.members = members.toArray(new Declaration[size]);
+        List<Key> folded = new ArrayList<Key>(size);
+        List<Key> humps = new ArrayList<Key>(size);
+        List<Integer> unindexed = new ArrayList<Integer>();
+        for (int i=0; i<size; i++) {
+            Declaration member = this.members[i];
+            boolean indexed =
+                    add(folded, humps, member.getName(), i);
+            for (String alias: member.getAliases()) {
+                indexed &= add(folded, humps, alias, i);
+            }
+            if (!indexed) {
+                unindexed.add(i);
+            }
+        }
+        Collections.sort(folded);
+        Collections.sort(humps);
+        foldedKeys = new String[folded.size()];
+        foldedPositions = new int[folded.size()];
+        for (int i=0; i<foldedKeys.length; i++) {
+            Key key = folded.get(i);
+            foldedKeys[i] = key.key;
+            foldedPositions[i] = key.position;
+        }
+        humpKeys = new String[humps.size()];
+        humpPositions = new int[humps.size()];
+        for (int i=0; i<humpKeys.length; i++) {
+            Key key = humps.get(i);
+            humpKeys[i] = key.key;
+            humpPositions[i] = key.position;
+        }
+        unindexedPositions = new int[unindexed.size()];
+        for (int i=0; i<unindexedPositions.length; i++) {
+            unindexedPositions[i] = unindexed.get(i);
+        }
+    }
+
+    /**
+     * Add the keys of the given name, returning false if
+     * it can't be indexed.
+     */
+    private static boolean add(List<Key> folded,
+            List<Key> humps, String name, int position) {
+        if (name==null || name.isEmpty()) {
+            //never matches a nonempty prefix
+            return true;
+        }
+        if (hasSurrogates(name)) {
+            return false;
+        }
+        folded.add(new Key(fold(name), position));
+        humps.add(new Key(humps(name), position));
+        return true;
+    }
+
+    /**
+     * Was the index built from the current state of the
+     * list?
+     */
+    boolean isCurrent(int modCount, int aliasModifications) {
+        return this.modCount==modCount &&
+                this.aliasModifications==aliasModifications;
+    }
+
+    /**
+     * The members whose name or one of whose aliases
+     * might match the given nonempty prefix, in the order
+     * they occur in the list of members.
+     */
+    List<Declaration> getCandidates(String startingWith) {
+        if (hasSurrogates(startingWith)) {
+            return Arrays.asList(members);
+        }
+        int[] positions = new int[8];
+        int count = 0;
+        for (int position: unindexedPositions) {
+            positions = grow(positions, count);
+            positions[count++] = position;
+        }
+        String foldedPrefix = fold(startingWith);
+        for (int i=lowerBound(foldedKeys, foldedPrefix);
+                i<foldedKeys.length &&
+                foldedKeys[i].startsWith(foldedPrefix);
+                i++) {
+            positions = grow(positions, count);
+            positions[count++] = foldedPositions[i];
+        }
+        String humpsPrefix = humps(startingWith);
+        for (int i=lowerBound(humpKeys, humpsPrefix);
+                i<humpKeys.length &&
+                humpKeys[i].startsWith(humpsPrefix);
+                i++) {
+            positions = grow(positions, count);
+            positions[count++] = humpPositions[i];
+        }
+        if (count==0) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(positions, 0, count);
+        List<Declaration> result =
+                new ArrayList<Declaration>(count);
+        int last = -1;
+        for (int i=0; i<count; i++) {
+            int position = positions[i];
+            //a member may match by name and by humps,
+            //or by more than one alias
+            if (position!=last) {
+                result.add(members[position]);
+                last = position;
+            }
+        }
+        return result;
+    }
+
+    private static int[] grow(int[] positions, int count) {
+        return count<positions.length ? positions :
+            Arrays.copyOf(positions, count*2);
+    }
+
+    /**
+     * The position of the first key not less than the
+     * given prefix.
+     */
+    private static int lowerBound(String[] keys,
+            String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low<high) {
+            int mid = (low+high) >>> 1;
+            if (keys[mid].compareTo(prefix)<0) {
+                low = mid+1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Fold the case of every character the same way as
+     * {@link String#regionMatches(boolean, int, String, int, int)}
+     * does when ignoring case.
+     */
+    private static String fold(String name) {
+        int length = name.length();
+        char[] chars = new char[length];
+        for (int i=0; i<length; i++) {
+            chars[i] = toLowerCase(toUpperCase(name.charAt(i)));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The first character of the name, followed by every
+     * other character which isn't lower case.
+     */
+    private static String humps(String name) {
+        StringBuilder humps = new StringBuilder(4);
+        humps.append(name.charAt(0));
+        for (int i=1, length=name.length(); i<length; i++) {
+            char c = name.charAt(i);
+            if (!isLowerCase(c)) {
+                humps.append(c);
+            }
+        }
+        return humps.toString();
+    }
+
+    private static boolean hasSurrogates(String name) {
+        for (int i=0, length=name.length(); i<length; i++) {
+            if (isSurrogate(name.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Key implements Comparable<Key> {
+
+        final String key;
+        final int position;
+
+        Key(String key, int position) {
+            this.key = key;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(Key that) {
+            return key.compareTo(that.key);
+        }
+
+    }
+
+}
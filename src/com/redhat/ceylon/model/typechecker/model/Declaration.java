@@ -7,10 +7,10 @@ import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isOverloadedVe
 import static java.util.Collections.emptyList;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.redhat.ceylon.common.Backends;
 
@@ -715,7 +715,7 @@ public abstract class Declaration
             }
             else {
                 Map<TypeParameter,Type> typeArgs = 
-                        new HashMap<TypeParameter,Type>();
+                        new TypeParameterMap<Type>();
                 for (TypeParameter p: typeParameters) {
                     Type pta = new Type();
                     if (p.isTypeConstructor()) {
@@ -739,5 +739,16 @@ public abstract class Declaration
     
     public void setAliases(List<String> aliases){
         this.aliases = aliases;
+        aliasModifications.incrementAndGet();
+    }
+    
+    //incremented whenever any declaration is given new 
+    //aliases, so that a list of members knows when to 
+    //rebuild its index of names for completion
+    private static final AtomicInteger aliasModifications = 
+            new AtomicInteger();
+    
+    static int getAliasModifications() {
+        return aliasModifications.get();
     }
 }
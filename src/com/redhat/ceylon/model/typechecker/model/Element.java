@@ -1,5 +1,6 @@
 package com.redhat.ceylon.model.typechecker.model;
 
+import static com.redhat.ceylon.model.typechecker.model.ModelUtil.getMatchingCandidates;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isNameMatching;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isOverloadedVersion;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isResolvable;
@@ -230,7 +231,9 @@ public abstract class Element {
     	        getScope()
     			    .getMatchingDeclarations(unit, 
     			            startingWith, proximity+1);
-        for (Declaration d: getMembers()) {
+        for (Declaration d: 
+                getMatchingCandidates(getMembers(), 
+                        startingWith)) {
             if (isResolvable(d) && !isOverloadedVersion(d)){
                 if(isNameMatching(startingWith, d)) {
                     result.put(d.getName(unit), 
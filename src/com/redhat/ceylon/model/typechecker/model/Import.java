@@ -1,6 +1,23 @@
 package com.redhat.ceylon.model.typechecker.model;
 
 public class Import {
+    
+    //the imports of the unit this import belongs to, 
+    //which count changes to their aliases, declarations,
+    //and ambiguity, so that the unit knows when to 
+    //rebuild its index of imports
+    private Unit.Imports owner;
+    
+    void setOwner(Unit.Imports owner) {
+        this.owner = owner;
+    }
+    
+    private void changed() {
+        Unit.Imports owner = this.owner;
+        if (owner!=null) {
+            owner.importChanged();
+        }
+    }
 	
 	private TypeDeclaration typeDeclaration;
 	private String alias;
@@ -16,6 +33,7 @@ public class Import {
 
     public void setDeclaration(Declaration declaration) {
         this.declaration = declaration;
+        changed();
     }
 
     public String getAlias() {
@@ -24,6 +42,7 @@ public class Import {
 
     public void setAlias(String alias) {
         this.alias = alias;
+        changed();
     }
     
     public boolean isAmbiguous() {
@@ -32,6 +51,7 @@ public class Import {
     
     public void setAmbiguous(boolean ambiguous) {
 		this.ambiguous = ambiguous;
+		changed();
 	}
     
     public TypeDeclaration getTypeDeclaration() {
@@ -40,6 +60,7 @@ public class Import {
     
     public void setTypeDeclaration(TypeDeclaration typeDeclaration) {
 		this.typeDeclaration = typeDeclaration;
+		changed();
 	}
     
     @Override
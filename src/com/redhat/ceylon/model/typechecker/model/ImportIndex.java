@@ -0,0 +1,111 @@
+package com.redhat.ceylon.model.typechecker.model;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the imports of a compilation unit, by the
+ * alias under which they import a declaration, and by
+ * the name of the imported declaration, so that resolving
+ * a name in a unit with hundreds of imports doesn't need
+ * to scan all of them.
+ *
+ * The index is a snapshot: {@link Unit} rebuilds it
+ * whenever its list of imports has been modified, or one
+ * of its imports has been given a new alias or 
+ * declaration, since it was built. Lookups must still check every import
+ * they return, just like when scanning the list.
+ *
+ * @see Unit#getImportedDeclaration(String, List, boolean)
+ * @see Unit#getAliasedName(Declaration, String)
+ */
+final class ImportIndex {
+
+    /**
+     * Lists of imports shorter than this are just scanned.
+     */
+    static final int THRESHOLD = 8;
+
+    private final int version;
+
+    private final Map<String,List<Import>> byAlias;
+    private final Map<String,List<Import>> byDeclarationName;
+
+    ImportIndex(List<Import> imports, int version) {
+        this.version = version;
+        int capacity = imports.size()*4/3+1;
+        byAlias = new HashMap<String,List<Import>>(capacity);
+        byDeclarationName =
+                new HashMap<String,List<Import>>(capacity);
+        for (int i=0, size=imports.size(); i<size; i++) {
+            Import imp = imports.get(i);
+            add(byAlias, imp.getAlias(), imp);
+            Declaration d = imp.getDeclaration();
+            if (d!=null) {
+                add(byDeclarationName, d.getName(), imp);
+            }
+        }
+    }
+
+    /**
+     * Was the index built from the current state of the
+     * imports?
+     */
+    boolean isCurrent(int version) {
+        return this.version==version;
+    }
+
+    /**
+     * The imports with the given alias, in the order they
+     * occur in the list of imports.
+     */
+    List<Import> getImportsWithAlias(String alias) {
+        return get(byAlias, alias);
+    }
+
+    /**
+     * The imports of a declaration with the given name, in
+     * the order they occur in the list of imports.
+     */
+    List<Import> getImportsOfDeclarationsNamed(String name) {
+        return get(byDeclarationName, name);
+    }
+
+    private static List<Import> get(
+            Map<String,List<Import>> map, String name) {
+        List<Import> result = map.get(name);
+        if (result==null) {
+            return emptyList();
+        }
+        else {
+            return result;
+        }
+    }
+
+    private static void add(Map<String,List<Import>> map,
+            String name, Import imp) {
+        if (name==null) {
+            return;
+        }
+        List<Import> named = map.get(name);
+        if (named==null) {
+            //most names are only imported once
+            map.put(name, singletonList(imp));
+        }
+        else if (named.size()==1) {
+            List<Import> list = new ArrayList<Import>(3);
+            list.add(named.get(0));
+            list.add(imp);
+            map.put(name, list);
+        }
+        else {
+            named.add(imp);
+        }
+    }
+
+}
@@ -1,7 +1,6 @@
 package com.redhat.ceylon.model.typechecker.model;
 
 import java.util.List;
-import java.util.Objects;
 
 public class Interface extends ClassOrInterface {
 
@@ -15,26 +14,22 @@ public class Interface extends ClassOrInterface {
 
     @Override
     public boolean isEmpty() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Empty");
+        return getLanguageType()==LanguageType.EMPTY;
     }
 
     @Override
     public boolean isSequence() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Sequence");
+        return getLanguageType()==LanguageType.SEQUENCE;
     }
 
     @Override
     public boolean isSequential() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Sequential");
+        return getLanguageType()==LanguageType.SEQUENTIAL;
     }
 
     @Override
     public boolean isIterable() {
-        return Objects.equals(getQualifiedNameString(),
-                "ceylon.language::Iterable");
+        return getLanguageType()==LanguageType.ITERABLE;
     }
 
     @Override
@@ -50,9 +45,12 @@ public class Interface extends ClassOrInterface {
             return true;
         }
         else {
-            //TODO: optimize this to avoid walking the
-            //      same supertypes multiple times
             if (dec instanceof Interface) {
+                SupertypeDeclarations sds = 
+                        getMemoisedSupertypeDeclarations();
+                if (sds!=null) {
+                    return sds.contains(dec);
+                }
                 List<Type> sts = getSatisfiedTypes();
                 for (int i = 0, s=sts.size(); i<s; i++) {
                     Type st = sts.get(i);
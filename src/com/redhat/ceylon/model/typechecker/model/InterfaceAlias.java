@@ -13,13 +13,12 @@ public class InterfaceAlias extends Interface {
     public boolean isEmptyType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isEmptyType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -31,13 +30,12 @@ public class InterfaceAlias extends Interface {
     public boolean isTupleType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isTupleType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -49,13 +47,12 @@ public class InterfaceAlias extends Interface {
     public boolean isSequentialType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isSequentialType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -67,13 +64,12 @@ public class InterfaceAlias extends Interface {
     public boolean isSequenceType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isSequenceType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -95,13 +91,12 @@ public class InterfaceAlias extends Interface {
     public boolean inherits(TypeDeclaration dec) {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().inherits(dec);
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         return false;
@@ -0,0 +1,110 @@
+package com.redhat.ceylon.model.typechecker.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A symbol table of the shared declarations of the
+ * packages of the language module, which are looked up
+ * by name, over and over, by every {@link Unit}, for
+ * example by {@link Unit#getSequentialDeclaration()}.
+ * There is one symbol table per language module, and so
+ * one per {@link Modules}, shared by all its units.
+ *
+ * Declarations are resolved lazily, the first time they
+ * are looked up, since the language module might still
+ * be being loaded or type checked. Only declarations
+ * which were found are remembered, and each is
+ * remembered along with the
+ * {@link Package#getMembersVersion() version} of the
+ * members of its package, so that it's looked up again
+ * whenever a member is added to or removed from the
+ * package.
+ *
+ * @see Module#getLanguageModuleSymbols()
+ */
+final class LanguageModuleSymbols {
+
+    private final Module languageModule;
+
+    private final ConcurrentMap<String,Symbols> packages =
+            new ConcurrentHashMap<String,Symbols>();
+
+    LanguageModuleSymbols(Module languageModule) {
+        this.languageModule = languageModule;
+    }
+
+    /**
+     * The shared declaration with the given name in the
+     * given package of the language module, or null.
+     */
+    Declaration getDeclaration(String packageName,
+            String name) {
+        Symbols symbols = packages.get(packageName);
+        if (symbols==null) {
+            Package pkg =
+                    languageModule.getPackage(packageName);
+            if (pkg==null) {
+                return null;
+            }
+            symbols = new Symbols(pkg);
+            Symbols existing =
+                    packages.putIfAbsent(packageName,
+                            symbols);
+            if (existing!=null) {
+                symbols = existing;
+            }
+        }
+        return symbols.getDeclaration(name);
+    }
+
+    /**
+     * The resolved declarations of a package.
+     */
+    private static final class Symbols {
+
+        private final Package pkg;
+        private final ConcurrentMap<String,Symbol> declarations =
+                new ConcurrentHashMap<String,Symbol>();
+
+        Symbols(Package pkg) {
+            this.pkg = pkg;
+        }
+
+        Declaration getDeclaration(String name) {
+            int version = pkg.getMembersVersion();
+            Symbol symbol = declarations.get(name);
+            if (symbol!=null &&
+                    symbol.version==version) {
+                return symbol.declaration;
+            }
+            Declaration d = pkg.getMember(name, null, false);
+            if (d!=null && d.isShared()) {
+                declarations.put(name,
+                        new Symbol(d, version));
+                return d;
+            }
+            else {
+                return null;
+            }
+        }
+
+    }
+
+    /**
+     * A declaration, along with the version of the members
+     * of its package it was found in.
+     */
+    private static final class Symbol {
+
+        final Declaration declaration;
+        final int version;
+
+        Symbol(Declaration declaration, int version) {
+            this.declaration = declaration;
+            this.version = version;
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.redhat.ceylon.model.typechecker.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The well-known classes and interfaces of the language
+ * module which are treated specially by the type checker.
+ * A {@link ClassOrInterface} determines which of them it
+ * is, if any, once, from its qualified name, so that
+ * predicates like {@link TypeDeclaration#isString()}
+ * just compare a field, no matter whether the language
+ * module was compiled from source or loaded by the model
+ * loader.
+ *
+ * @see ClassOrInterface#getLanguageType()
+ */
+enum LanguageType {
+
+    ANYTHING("Anything"),
+    OBJECT("Object"),
+    NULL("Null"),
+    NULL_VALUE("null"),
+    EMPTY_VALUE("empty"),
+    TRUE_VALUE("true"),
+    FALSE_VALUE("false"),
+    BASIC("Basic"),
+    BOOLEAN("Boolean"),
+    STRING("String"),
+    CHARACTER("Character"),
+    FLOAT("Float"),
+    INTEGER("Integer"),
+    BYTE("Byte"),
+    TUPLE("Tuple"),
+    ENTRY("Entry"),
+    RANGE("Range"),
+    EMPTY("Empty"),
+    SEQUENCE("Sequence"),
+    SEQUENTIAL("Sequential"),
+    ITERABLE("Iterable"),
+    /**
+     * Any other class or interface.
+     */
+    NONE(null);
+
+    private static final Map<String,LanguageType> byQualifiedName =
+            new HashMap<String,LanguageType>();
+
+    static {
+        for (LanguageType type: values()) {
+            if (type.name!=null) {
+                byQualifiedName.put("ceylon.language::" + type.name,
+                        type);
+            }
+        }
+    }
+
+    private final String name;
+
+    private LanguageType(String name) {
+        this.name = name;
+    }
+
+    /**
+     * The well-known type with the given qualified name,
+     * or {@link #NONE}.
+     */
+    static LanguageType forQualifiedName(String qualifiedName) {
+        if (qualifiedName==null) {
+            return NONE;
+        }
+        LanguageType type =
+                byQualifiedName.get(qualifiedName);
+        return type==null ? NONE : type;
+    }
+
+}
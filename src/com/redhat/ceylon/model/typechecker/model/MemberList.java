@@ -0,0 +1,288 @@
+package com.redhat.ceylon.model.typechecker.model;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The list of members of a scope, which indexes its
+ * members by name, so that looking up a member of a
+ * scope with hundreds of members, for example a Java
+ * class, doesn't need to scan all of them. The index
+ * is built lazily by the first lookup, and rebuilt
+ * after any modification of the list, or once a member 
+ * which had no name when it was built has been named.
+ *
+ * Members whose names match a prefix typed by the user
+ * are found using a second, {@link CompletionIndex},
+ * which is also built lazily, and rebuilt after any
+ * modification of the list.
+ *
+ * Both indexes are never modified once they're built,
+ * and are fully built before they're published, so the 
+ * list may be read by many threads at once, as long as 
+ * it isn't modified meanwhile. Once
+ * {@link #freeze() frozen}, the list may not be modified, 
+ * and its index is fully built.
+ *
+ * @see ModelUtil#lookupMember(List, String, List, boolean, boolean)
+ */
+public class MemberList extends ArrayList<Declaration> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Lists shorter than this are just scanned.
+     */
+    private static final int INDEX_THRESHOLD = 8;
+
+    private transient volatile NameIndex index;
+    private transient boolean frozen;
+    private transient volatile CompletionIndex completionIndex;
+
+    public MemberList() {}
+
+    public MemberList(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    public MemberList(Collection<? extends Declaration> members) {
+        super(members);
+    }
+
+    /**
+     * Build the index, trim the list, and forbid any 
+     * further modification of it.
+     */
+    public void freeze() {
+        if (!frozen) {
+            trimToSize();
+            if (size()>=INDEX_THRESHOLD) {
+                buildIndex();
+            }
+            frozen = true;
+        }
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException(
+                    "list of members is frozen");
+        }
+    }
+
+    @Override
+    public boolean add(Declaration member) {
+        checkNotFrozen();
+        return super.add(member);
+    }
+
+    @Override
+    public void add(int i, Declaration member) {
+        checkNotFrozen();
+        super.add(i, member);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Declaration> members) {
+        checkNotFrozen();
+        return super.addAll(members);
+    }
+
+    @Override
+    public boolean addAll(int i, 
+            Collection<? extends Declaration> members) {
+        checkNotFrozen();
+        return super.addAll(i, members);
+    }
+
+    @Override
+    public Declaration remove(int i) {
+        checkNotFrozen();
+        return super.remove(i);
+    }
+
+    @Override
+    public boolean remove(Object member) {
+        checkNotFrozen();
+        return super.remove(member);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> members) {
+        checkNotFrozen();
+        return super.removeAll(members);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> members) {
+        checkNotFrozen();
+        return super.retainAll(members);
+    }
+
+    @Override
+    public void clear() {
+        checkNotFrozen();
+        super.clear();
+    }
+
+    @Override
+    public Declaration set(int i, Declaration member) {
+        checkNotFrozen();
+        Declaration result = super.set(i, member);
+        //set() isn't a structural modification
+        //of an ArrayList, but it is for us
+        modCount++;
+        return result;
+    }
+
+    /**
+     * The members which might have the given name, in
+     * the order they occur in this list. For short lists,
+     * this is just the whole list, so the caller must
+     * still check the name of each member.
+     */
+    public List<Declaration> getCandidates(String name) {
+        if (size()<INDEX_THRESHOLD) {
+            return this;
+        }
+        NameIndex index = this.index;
+        if (index==null || !index.isCurrent(modCount)) {
+            index = buildIndex();
+        }
+        List<Declaration> result = index.members.get(name);
+        if (result==null) {
+            return emptyList();
+        }
+        else {
+            return result;
+        }
+    }
+
+    /**
+     * The members whose names or aliases might
+     * {@link ModelUtil#isNameMatching(String, String) match} 
+     * the given prefix, in the order they occur in this 
+     * list. For short lists, or an empty prefix, this is 
+     * just the whole list, so the caller must still check 
+     * the name and aliases of each member.
+     */
+    public List<Declaration> getMatchingCandidates(
+            String startingWith) {
+        if (size()<INDEX_THRESHOLD ||
+                startingWith==null || 
+                startingWith.isEmpty()) {
+            return this;
+        }
+        int aliasModifications = 
+                Declaration.getAliasModifications();
+        CompletionIndex completionIndex = 
+                this.completionIndex;
+        if (completionIndex==null || 
+                !completionIndex.isCurrent(modCount, 
+                        aliasModifications)) {
+            completionIndex = 
+                    new CompletionIndex(this, modCount, 
+                            aliasModifications);
+            this.completionIndex = completionIndex;
+        }
+        return completionIndex.getCandidates(startingWith);
+    }
+
+    private NameIndex buildIndex() {
+        int modCount = this.modCount;
+        Map<String,List<Declaration>> map =
+                new HashMap<String,List<Declaration>>
+                    (size()*4/3+1);
+        List<Declaration> unnamed = 
+                new ArrayList<Declaration>(0);
+        for (int i=0, l=size(); i<l; i++) {
+            Declaration member = get(i);
+            if (member.getName()==null) {
+                unnamed.add(member);
+            }
+            else {
+                addToIndex(map, member);
+            }
+        }
+        for (Map.Entry<String,List<Declaration>> entry: 
+                map.entrySet()) {
+            List<Declaration> named = entry.getValue();
+            if (named.size()>1) {
+                //callers of getCandidates() mustn't 
+                //modify the index
+                entry.setValue(unmodifiableList(named));
+            }
+        }
+        NameIndex index = 
+                new NameIndex(map, modCount, 
+                        unnamed.toArray(new Declaration[unnamed.size()]));
+        this.index = index;
+        return index;
+    }
+
+    /**
+     * The members by name, as of the given modification
+     * of the list, along with the members which had no
+     * name yet.
+     */
+    private static final class NameIndex {
+        
+        final Map<String,List<Declaration>> members;
+        final int modCount;
+        final Declaration[] unnamed;
+        
+        NameIndex(Map<String,List<Declaration>> members,
+                int modCount, Declaration[] unnamed) {
+            this.members = members;
+            this.modCount = modCount;
+            this.unnamed = unnamed;
+        }
+        
+        boolean isCurrent(int modCount) {
+            if (this.modCount!=modCount) {
+                return false;
+            }
+            for (Declaration member: unnamed) {
+                if (member.getName()!=null) {
+                    //named since
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+    }
+
+    private static void addToIndex(
+            Map<String,List<Declaration>> map,
+            Declaration member) {
+        String name = member.getName();
+        List<Declaration> named = map.get(name);
+        if (named==null) {
+            //most names aren't overloaded
+            map.put(name, singletonList(member));
+        }
+        else if (named.size()==1) {
+            List<Declaration> overloads =
+                    new ArrayList<Declaration>(3);
+            overloads.add(named.get(0));
+            overloads.add(member);
+            map.put(name, overloads);
+        }
+        else {
+            named.add(member);
+        }
+    }
+
+}
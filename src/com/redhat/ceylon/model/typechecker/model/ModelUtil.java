@@ -11,7 +11,6 @@ import static java.util.Collections.singletonList;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -22,6 +21,7 @@ import com.redhat.ceylon.common.Backend;
 import com.redhat.ceylon.common.BackendSupport;
 import com.redhat.ceylon.common.Backends;
 import com.redhat.ceylon.model.loader.model.LazyElement;
+import com.redhat.ceylon.model.typechecker.context.TypeCache;
 
 
 
@@ -854,6 +854,24 @@ public class ModelUtil {
         }
     }
     
+    /**
+     * The given members whose names or aliases might 
+     * match the given prefix, for completion. The caller 
+     * must still check each member using 
+     * {@link #isNameMatching(String, Declaration)}.
+     */
+    public static List<Declaration> getMatchingCandidates(
+            List<Declaration> members, String startingWith) {
+        if (members instanceof MemberList) {
+            //only look at members with matching names
+            return ((MemberList) members)
+                    .getMatchingCandidates(startingWith);
+        }
+        else {
+            return members;
+        }
+    }
+    
     /**
      * Match the name of the given declaration to the given
      * pattern. A name matches if:
@@ -1023,7 +1041,7 @@ public class ModelUtil {
         List<TypeParameter> typeParameters = 
                 getTypeParameters(declaration);
         Map<TypeParameter,Type> map = 
-                new HashMap<TypeParameter,Type>
+                new TypeParameterMap<Type>
                     (count);
         //make sure we collect all type arguments
         //from the whole qualified type!
@@ -1102,7 +1120,7 @@ public class ModelUtil {
             List<SiteVariance> variances,
             Declaration declaration) {
         Map<TypeParameter,SiteVariance> map = 
-                new HashMap<TypeParameter,SiteVariance>();
+                new TypeParameterMap<SiteVariance>();
         //make sure we collect all type arguments
         //from the whole qualified type!
         if (receivingType!=null) {
@@ -1222,6 +1240,17 @@ public class ModelUtil {
         else if (pt.isUnion()) {
             List<Type> caseTypes = 
                     pt.getCaseTypes();
+            if (list.size()+caseTypes.size() >= 
+                        UnionBuilder.THRESHOLD &&
+                    TypeCache.isEnabled()) {
+                //avoid comparing every case to 
+                //every other case
+                UnionBuilder builder = 
+                        new UnionBuilder(list);
+                builder.add(pt);
+                builder.copyTo(list);
+                return;
+            }
             for ( int i=0, size=caseTypes.size(); 
                     i<size; i++ ) {
                 Type t = caseTypes.get(i);
@@ -1230,8 +1259,16 @@ public class ModelUtil {
         }
         else if (pt.isWellDefined()) {
             boolean add=true;
+            boolean nominal = UnionBuilder.isNominal(pt);
             for (int i=0; i<list.size(); i++) {
                 Type t = list.get(i);
+                if (nominal && 
+                        UnionBuilder.isNominal(t) &&
+                        !related(pt.getDeclaration(), 
+                                t.getDeclaration())) {
+                    //can't be a subtype or supertype
+                    continue;
+                }
                 if (pt.isSubtypeOf(t)) {
                     add=false;
                     break;
@@ -1247,6 +1284,13 @@ public class ModelUtil {
         }
     }
     
+    private static boolean related(
+            TypeDeclaration p, TypeDeclaration q) {
+        return p==q || 
+                p.inherits(q) || 
+                q.inherits(p);
+    }
+    
     /**
      * Helper method for eliminating duplicate types from
      * lists of types that form an intersection type, taking 
@@ -1317,7 +1361,12 @@ public class ModelUtil {
                     //a supertype of the intersection, even 
                     //though it is not a supertype of any of  
                     //the intersected types!
-                    Type t = canonicalIntersection(list, unit);
+                    //(copy the list, since we're about to
+                    //add to it, and types must not change
+                    //once they've been cached)
+                    Type t = canonicalIntersection(
+                            new ArrayList<Type>(list), 
+                            unit);
                     if (type.isSupertypeOf(t)) {
                         return;
                     }
@@ -1739,11 +1788,22 @@ public class ModelUtil {
      */
     public static Type unionType(
             Type lhst, Type rhst, Unit unit) {
+        TypeCache cache = 
+                getCombinationCache(lhst, rhst, unit);
+        if (cache!=null) {
+            TypeDeclaration ut = cache.getUnion(lhst, rhst, unit);
+            if (ut!=null) {
+                return ut.getType();
+            }
+        }
         List<Type> list = new ArrayList<Type>(2);
         addToUnion(list, rhst);
         addToUnion(list, lhst);
         UnionType ut = new UnionType(unit);
         ut.setCaseTypes(list);
+        if (cache!=null && isShareable(ut)) {
+            cache.putUnion(lhst, rhst, ut);
+        }
         return ut.getType();
     }
 
@@ -1758,12 +1818,25 @@ public class ModelUtil {
         if (simpleIntersection != null) {
             return simpleIntersection;
         }
+        TypeCache cache = 
+                getCombinationCache(lhst, rhst, unit);
+        if (cache!=null) {
+            TypeDeclaration it = 
+                    cache.getIntersection(lhst, rhst, unit);
+            if (it!=null) {
+                return it.getType();
+            }
+        }
         List<Type> list = new ArrayList<Type>(2);
         addToIntersection(list, rhst, unit);
         addToIntersection(list, lhst, unit);
         IntersectionType it = new IntersectionType(unit);
         it.setSatisfiedTypes(list);
-        return it.canonicalize().getType();
+        TypeDeclaration result = it.canonicalize();
+        if (cache!=null && isShareable(result)) {
+            cache.putIntersection(lhst, rhst, result);
+        }
+        return result.getType();
     }
     
     /**
@@ -1803,9 +1876,71 @@ public class ModelUtil {
         if (types.size()==1) {
             return types.get(0);
         }
+        TypeCache cache = getCombinationCache(types, unit);
+        if (cache!=null) {
+            TypeDeclaration it = 
+                    cache.getCanonicalIntersection(types, unit);
+            if (it!=null) {
+                return it.getType();
+            }
+        }
         IntersectionType it = new IntersectionType(unit);
         it.setSatisfiedTypes(types);
-        return it.canonicalize().getType();
+        TypeDeclaration result = it.canonicalize();
+        if (cache!=null && isShareable(result)) {
+            cache.putCanonicalIntersection(types, result);
+        }
+        return result.getType();
+    }
+    
+    /**
+     * The cache of the canonical unions and intersections 
+     * of the given types, or null if their union or 
+     * intersection should not be cached.
+     */
+    private static TypeCache getCombinationCache(
+            Type lhst, Type rhst, Unit unit) {
+        if (lhst==null || rhst==null || unit==null ||
+                !TypeCache.isEnabled() ||
+                !lhst.canCacheRelation() ||
+                !rhst.canCacheRelation()) {
+            return null;
+        }
+        return unit.getCache();
+    }
+    
+    private static TypeCache getCombinationCache(
+            List<Type> types, Unit unit) {
+        if (unit==null || !TypeCache.isEnabled()) {
+            return null;
+        }
+        for (int i=0, size=types.size(); i<size; i++) {
+            Type type = types.get(i);
+            if (type==null || !type.canCacheRelation()) {
+                return null;
+            }
+        }
+        return unit.getCache();
+    }
+    
+    /**
+     * Can the given canonical union or intersection be 
+     * cached? Only if its 
+     * {@link TypeDeclaration#getType() type} is a new 
+     * object every time, and not one of the types we 
+     * formed it from, since callers sometimes go on to
+     * modify the resulting type.
+     */
+    private static boolean isShareable(TypeDeclaration dec) {
+        if (dec instanceof UnionType) {
+            return dec.getCaseTypes().size()>1;
+        }
+        else if (dec instanceof IntersectionType) {
+            return dec.getSatisfiedTypes().size()>1;
+        }
+        else {
+            return true;
+        }
     }
 
     private static Type getSimpleIntersection(
@@ -2022,6 +2157,11 @@ public class ModelUtil {
             List<Declaration> members, String name,
             List<Type> signature, boolean ellipsis,
             boolean onlyExactMatches) {
+        if (members instanceof MemberList) {
+            //only look at members with the right name
+            members = ((MemberList) members)
+                    .getCandidates(name);
+        }
         List<Declaration> results = null;
         Declaration result = null;
         Declaration inexactMatch = null;
@@ -2296,10 +2436,36 @@ public class ModelUtil {
             TypeDeclaration dec, 
             Type first, Type second, 
             Unit unit) {
+        TypeCache cache = 
+                getCombinationCache(first, second, unit);
+        if (cache!=null) {
+            Type pi = cache.getPrincipalInstantiation(
+                    dec, first, second);
+            if (pi!=null) {
+                return pi;
+            }
+        }
+        Type pi = computePrincipalInstantiation(
+                dec, first, second, unit);
+        //don't cache Nothing, or irreconcilable type 
+        //arguments, which belong to the unit
+        if (cache!=null && 
+                pi.getDeclaration()==dec &&
+                !pi.containsUnknowns()) {
+            cache.putPrincipalInstantiation(
+                    dec, first, second, pi);
+        }
+        return pi;
+    }
+
+    private static Type computePrincipalInstantiation(
+            TypeDeclaration dec, 
+            Type first, Type second, 
+            Unit unit) {
         List<TypeParameter> tps = dec.getTypeParameters();
         List<Type> args = new ArrayList<Type>(tps.size());
         Map<TypeParameter,SiteVariance> varianceOverrides =
-                new HashMap<TypeParameter,SiteVariance>(1);
+                new TypeParameterMap<SiteVariance>(1);
         for (TypeParameter tp: tps) {
             Type firstArg = 
                     first.getTypeArguments().get(tp);
@@ -2499,6 +2665,7 @@ public class ModelUtil {
     }
 
     public static void clearProducedTypeCache(TypeDeclaration decl) {
+        decl.supertypesChanged();
         Module module = getModule(decl);
         if(module != null){
             module.clearCache(decl);
@@ -2700,6 +2867,11 @@ public class ModelUtil {
      */
     public static Declaration lookupMemberForBackend(
             List<Declaration> members, String name, Backends backends) {
+        if (members instanceof MemberList) {
+            //only look at members with the right name
+            members = ((MemberList) members)
+                    .getCandidates(name);
+        }
         for (Declaration dec: members) {
             if (isResolvable(dec) && isNamed(name, dec)) {
                 Backends bs = dec.getNativeBackends();
@@ -2725,6 +2897,11 @@ public class ModelUtil {
      */
     public static List<Declaration> lookupOverloadedByName(
             List<Declaration> members, String name) {
+        if (members instanceof MemberList) {
+            //only look at members with the right name
+            members = ((MemberList) members)
+                    .getCandidates(name);
+        }
         List<Declaration> result = null;
         for (Declaration dec: members) {
             if (isResolvable(dec) && isNamed(name, dec)) {
@@ -3063,13 +3240,39 @@ public class ModelUtil {
     }
 
     public static boolean isBooleanTrue(Declaration d) {
-        return d!=null && d.getQualifiedNameString()
-                .equals("ceylon.language::true");
+        TypeDeclaration td = objectClass(d);
+        return td!=null && td.isTrueValue();
     }
 
     public static boolean isBooleanFalse(Declaration d) {
-        return d!=null && d.getQualifiedNameString()
-                .equals("ceylon.language::false");
+        TypeDeclaration td = objectClass(d);
+        return td!=null && td.isFalseValue();
+    }
+    
+    /**
+     * The given type declaration itself, or the anonymous
+     * class of the given object declaration, or null if
+     * the given declaration is neither.
+     */
+    private static TypeDeclaration objectClass(Declaration d) {
+        if (d instanceof TypeDeclaration) {
+            return (TypeDeclaration) d;
+        }
+        else if (d instanceof Value && 
+                isObject((Value) d)) {
+            TypeDeclaration td = 
+                    ((Value) d).getTypeDeclaration();
+            //a value whose type just happens to be the
+            //anonymous class doesn't count
+            return d.getName()!=null &&
+                    d.getName().equals(td.getName()) &&
+                    d.getContainer()!=null &&
+                    d.getContainer().equals(td.getContainer()) ?
+                            td : null;
+        }
+        else {
+            return null;
+        }
     }
 
     public static Type genericFunctionType(
@@ -5,16 +5,22 @@ import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isOverloadedVe
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isResolvable;
 import static java.util.Collections.unmodifiableList;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.redhat.ceylon.common.Backends;
 import com.redhat.ceylon.model.typechecker.context.TypeCache;
+import com.redhat.ceylon.model.typechecker.context.TypeInterner;
 
 public class Module 
         implements Referenceable, Annotated, Comparable<Module> {
@@ -26,8 +32,7 @@ public class Module
     private String version;
     private int major;
     private int minor;
-    private List<Package> packages = 
-            new ArrayList<Package>();
+    private List<Package> packages = new Packages();
     private List<ModuleImport> imports = 
             new ArrayList<ModuleImport>();
     private Module languageModule;
@@ -38,6 +43,9 @@ public class Module
     private Unit unit;
     private String memoisedName;
     private TypeCache cache = new TypeCache();
+    private TypeInterner interner = 
+            TypeInterner.isEnabledByDefault() ? 
+                    new TypeInterner() : null;
     private String signature;
     private List<ModuleImport> overridenImports = null;
     private Backends nativeBackends = Backends.ANY;
@@ -67,6 +75,147 @@ public class Module
     public List<Package> getPackages() {
         return packages;
     }
+    
+    //incremented whenever a package or an import is 
+    //added to or removed from this module, so that a 
+    //module which remembers the packages it resolved 
+    //knows when to resolve them again
+    private final AtomicInteger packagesVersion = 
+            new AtomicInteger();
+    
+    //incremented after the packages or imports of any
+    //module change, so that a module which remembers the
+    //packages it resolved as of the same stamp knows it
+    //doesn't need to look at the version of each module
+    private static final AtomicInteger packagesStamp = 
+            new AtomicInteger();
+    
+    /**
+     * Incremented every time a package or an import is
+     * added to or removed from this module, or anything 
+     * else that might change how a package name is 
+     * resolved in this module changes, always after the 
+     * change itself.
+     */
+    public int getPackagesVersion() {
+        return packagesVersion.get();
+    }
+    
+    /**
+     * Incremented every time the {@link #getPackagesVersion()
+     * packages version} of any module changes, always 
+     * after it changes.
+     */
+    public static int getPackagesStamp() {
+        return packagesStamp.get();
+    }
+    
+    protected void packagesChanged() {
+        packagesVersion.incrementAndGet();
+        packagesStamp.incrementAndGet();
+    }
+    
+    /**
+     * The list of packages of a module, which counts its
+     * modifications.
+     */
+    private final class Packages 
+            extends ArrayList<Package> {
+        private static final long serialVersionUID = 1L;
+        @Override
+        public boolean add(Package pkg) {
+            boolean result = super.add(pkg);
+            packagesChanged();
+            return result;
+        }
+        @Override
+        public void add(int index, Package pkg) {
+            super.add(index, pkg);
+            packagesChanged();
+        }
+        @Override
+        public boolean addAll(Collection<? extends Package> pkgs) {
+            boolean result = super.addAll(pkgs);
+            packagesChanged();
+            return result;
+        }
+        @Override
+        public boolean addAll(int index, 
+                Collection<? extends Package> pkgs) {
+            boolean result = super.addAll(index, pkgs);
+            packagesChanged();
+            return result;
+        }
+        @Override
+        public Package set(int index, Package pkg) {
+            Package result = super.set(index, pkg);
+            packagesChanged();
+            return result;
+        }
+        @Override
+        public Package remove(int index) {
+            Package result = super.remove(index);
+            packagesChanged();
+            return result;
+        }
+        @Override
+        public boolean remove(Object pkg) {
+            boolean result = super.remove(pkg);
+            packagesChanged();
+            return result;
+        }
+        @Override
+        public boolean removeAll(Collection<?> pkgs) {
+            boolean result = super.removeAll(pkgs);
+            packagesChanged();
+            return result;
+        }
+        @Override
+        public boolean retainAll(Collection<?> pkgs) {
+            boolean result = super.retainAll(pkgs);
+            packagesChanged();
+            return result;
+        }
+        @Override
+        protected void removeRange(int from, int to) {
+            super.removeRange(from, to);
+            packagesChanged();
+        }
+        @Override
+        public void clear() {
+            super.clear();
+            packagesChanged();
+        }
+    }
+    
+    private volatile boolean frozen;
+    
+    /**
+     * Freeze every package of this module, and its list
+     * of packages, so that the packages and their members 
+     * may be read by many threads at once, without 
+     * locking. No package may be added to or removed from 
+     * a frozen module.
+     * 
+     * @see Modules#freeze()
+     */
+    public void freeze() {
+        if (!frozen) {
+            //freezing a package may load packages, so
+            //don't use an iterator
+            List<Package> list = getPackages();
+            for (int i=0; i<list.size(); i++) {
+                list.get(i).freeze();
+            }
+            packages = unmodifiableList(
+                    new ArrayList<Package>(list));
+            frozen = true;
+        }
+    }
+    
+    public boolean isFrozen() {
+        return frozen;
+    }
 
     public List<ModuleImport> getImports() {
         return Collections.unmodifiableList(imports);
@@ -74,6 +223,25 @@ public class Module
     
     public void addImport(ModuleImport modImport) {
         imports.add(modImport);
+        packagesChanged();
+    }
+    
+    private volatile LanguageModuleSymbols languageModuleSymbols;
+    
+    /**
+     * The symbol table of the declarations of this 
+     * module, if it is the language module, shared by 
+     * every unit which looks them up.
+     */
+    LanguageModuleSymbols getLanguageModuleSymbols() {
+        LanguageModuleSymbols symbols = languageModuleSymbols;
+        if (symbols==null) {
+            //a race just means we create an extra 
+            //table, which is harmless
+            symbols = new LanguageModuleSymbols(this);
+            languageModuleSymbols = symbols;
+        }
+        return symbols;
     }
     
     public Module getLanguageModule() {
@@ -169,50 +337,16 @@ public class Module
             boolean isDefaultPackage = 
                     packageName.isEmpty();
             if (!isDefaultPackage) {
-                for (Declaration d: p.getMembers()) {
+                for (Declaration d: 
+                        p.getMatchingMembers(startingWith)) {
                     try {
-                        if (isResolvable(d) && 
-                                d.isShared() && 
-                                !isOverloadedVersion(d) &&
-                                isNameMatching(startingWith, d)) {
-                            String name = d.getName();
-                            boolean isSpecialValue = 
-                                    isLanguageModule &&
-                                        name.equals("true") || 
-                                        name.equals("false") || 
-                                        name.equals("null");
-                            boolean isSpecialType = 
-                                    isLanguageModule &&
-                                        name.equals("String") ||
-                                        name.equals("Integer") ||
-                                        name.equals("Float") ||
-                                        name.equals("Character") ||
-                                        name.equals("Boolean") ||
-                                        name.equals("Byte") ||
-                                        name.equals("Object") ||
-                                        name.equals("Anything");
-                            int prox;
-                            if (isSpecialValue) {
-                                prox = -1;
-                            }
-                            else if (isSpecialType) {
-                                //just less than toplevel
-                                //declarations of the package
-                                prox = proximity+2;
-                            }
-                            else if (isLanguageModule) {
-                                //just less than toplevel
-                                //declarations of the package
-                                prox = proximity+3;
-                            }
-                            else {
-                                //unimported declarations
-                                //that may be imported
-                                prox = proximity+4;
-                            }
+                        if (isAvailable(d, startingWith)) {
                             result.put(d.getQualifiedNameString(), 
                                     new DeclarationWithProximity(d, 
-                                            prox, !isLanguageModule));
+                                            getProximity(d.getName(), 
+                                                    isLanguageModule, 
+                                                    proximity), 
+                                            !isLanguageModule));
                         }
                     }
                     catch (Exception e) {}
@@ -221,14 +355,226 @@ public class Module
         }
         if ("Nothing".startsWith(startingWith)) {
             result.put("Nothing", 
-                    new DeclarationWithProximity(
-                            new NothingType(unit),
-                            //same as other "special" 
-                            //language module declarations
-                            proximity+2));
+                    nothing(proximity));
+        }
+        return result;
+    }
+
+    /**
+     * The given number of the declarations returned by
+     * {@link #getAvailableDeclarations(String, int)} with 
+     * the smallest proximity, or all of them, if there 
+     * aren't that many. Of the declarations with the same 
+     * proximity, those with the smallest qualified names 
+     * are kept.
+     * 
+     * The language module is searched first, since its
+     * declarations are closer than those of any other 
+     * package, and once we have enough declarations 
+     * closer than any declaration of another package, 
+     * that package isn't searched at all.
+     */
+    public Map<String, DeclarationWithProximity> 
+    getAvailableDeclarations(String startingWith, 
+            int proximity, int limit) {
+        Map<String, DeclarationWithProximity> result = 
+                new TreeMap<String,DeclarationWithProximity>();
+        if (limit<=0) {
+            return result;
+        }
+        //the best declarations so far, the furthest last
+        TreeSet<Map.Entry<String, DeclarationWithProximity>> 
+        best = 
+                new TreeSet<Map.Entry<String, DeclarationWithProximity>>
+                    (BY_PROXIMITY);
+        int closest = 
+                getClosestProximity(startingWith, 
+                        proximity);
+        List<Package> packages = getAllVisiblePackages();
+        for (Package p: packages) {
+            if (p.getNameAsString()
+                    .equals(LANGUAGE_MODULE_NAME)) {
+                addAvailableDeclarations(p, true, 
+                        startingWith, proximity, 
+                        best, result, limit);
+            }
+        }
+        if ("Nothing".startsWith(startingWith)) {
+            addBest(nothing(proximity), "Nothing", 
+                    best, result, limit);
+        }
+        for (Package p: packages) {
+            String packageName = 
+                    p.getNameAsString();
+            if (!packageName.isEmpty() && 
+                    !packageName.equals(LANGUAGE_MODULE_NAME)) {
+                if (best.size()==limit && 
+                        best.last().getValue().getProximity()
+                            < closest) {
+                    //nothing in this package, or in any 
+                    //other package, can make the cut
+                    break;
+                }
+                addAvailableDeclarations(p, false, 
+                        startingWith, proximity, 
+                        best, result, limit);
+            }
         }
         return result;
     }
+    
+    private void addAvailableDeclarations(Package p, 
+            boolean isLanguageModule, String startingWith, 
+            int proximity, 
+            TreeSet<Map.Entry<String, DeclarationWithProximity>> best,
+            Map<String, DeclarationWithProximity> result, 
+            int limit) {
+        for (Declaration d: 
+                p.getMatchingMembers(startingWith)) {
+            try {
+                if (isAvailable(d, startingWith)) {
+                    addBest(new DeclarationWithProximity(d, 
+                                    getProximity(d.getName(), 
+                                            isLanguageModule, 
+                                            proximity), 
+                                    !isLanguageModule), 
+                            d.getQualifiedNameString(), 
+                            best, result, limit);
+                }
+            }
+            catch (Exception e) {}
+        }
+    }
+    
+    private static void addBest(
+            DeclarationWithProximity dwp, String name,
+            TreeSet<Map.Entry<String, DeclarationWithProximity>> best,
+            Map<String, DeclarationWithProximity> result, 
+            int limit) {
+        DeclarationWithProximity existing = 
+                result.remove(name);
+        if (existing!=null) {
+            best.remove(new SimpleImmutableEntry
+                    <String, DeclarationWithProximity>
+                        (name, existing));
+        }
+        Map.Entry<String, DeclarationWithProximity> entry = 
+                new SimpleImmutableEntry
+                    <String, DeclarationWithProximity>
+                        (name, dwp);
+        if (best.size()==limit) {
+            Map.Entry<String, DeclarationWithProximity> last = 
+                    best.last();
+            if (BY_PROXIMITY.compare(entry, last)>=0) {
+                return;
+            }
+            best.remove(last);
+            result.remove(last.getKey());
+        }
+        best.add(entry);
+        result.put(name, dwp);
+    }
+    
+    private static boolean isAvailable(Declaration d, 
+            String startingWith) {
+        return isResolvable(d) && 
+                d.isShared() && 
+                !isOverloadedVersion(d) &&
+                isNameMatching(startingWith, d);
+    }
+    
+    private static int getProximity(String name, 
+            boolean isLanguageModule, int proximity) {
+        boolean isSpecialValue = 
+                isLanguageModule &&
+                    name.equals("true") || 
+                    name.equals("false") || 
+                    name.equals("null");
+        boolean isSpecialType = 
+                isLanguageModule &&
+                    name.equals("String") ||
+                    name.equals("Integer") ||
+                    name.equals("Float") ||
+                    name.equals("Character") ||
+                    name.equals("Boolean") ||
+                    name.equals("Byte") ||
+                    name.equals("Object") ||
+                    name.equals("Anything");
+        if (isSpecialValue) {
+            return -1;
+        }
+        else if (isSpecialType) {
+            //just less than toplevel
+            //declarations of the package
+            return proximity+2;
+        }
+        else if (isLanguageModule) {
+            //just less than toplevel
+            //declarations of the package
+            return proximity+3;
+        }
+        else {
+            //unimported declarations
+            //that may be imported
+            return proximity+4;
+        }
+    }
+    
+    /**
+     * The names which {@link #getProximity} treats 
+     * specially.
+     */
+    private static final String[] SPECIAL_NAMES = {
+        "true", "false", "null",
+        "String", "Integer", "Float", "Character", 
+        "Boolean", "Byte", "Object", "Anything"
+    };
+    
+    /**
+     * The smallest proximity of a declaration matching 
+     * the given prefix outside the language module.
+     */
+    private static int getClosestProximity(
+            String startingWith, int proximity) {
+        int closest = proximity+4;
+        for (String name: SPECIAL_NAMES) {
+            if (isNameMatching(startingWith, name)) {
+                closest = Math.min(closest, 
+                        getProximity(name, false, 
+                                proximity));
+            }
+        }
+        return closest;
+    }
+    
+    private DeclarationWithProximity nothing(int proximity) {
+        return new DeclarationWithProximity(
+                new NothingType(unit),
+                //same as other "special" 
+                //language module declarations
+                proximity+2);
+    }
+    
+    /**
+     * Orders declarations by proximity, and then by 
+     * qualified name.
+     */
+    private static final 
+    Comparator<Map.Entry<String, DeclarationWithProximity>> 
+    BY_PROXIMITY = 
+            new Comparator<Map.Entry<String, DeclarationWithProximity>>() {
+        @Override
+        public int compare(
+                Map.Entry<String, DeclarationWithProximity> x, 
+                Map.Entry<String, DeclarationWithProximity> y) {
+            int xp = x.getValue().getProximity();
+            int yp = y.getValue().getProximity();
+            if (xp!=yp) {
+                return xp<yp ? -1 : 1;
+            }
+            return x.getKey().compareTo(y.getKey());
+        }
+    };
 
     protected boolean isJdkModule(String moduleName) {
         // overridden by subclasses
@@ -296,6 +642,7 @@ public class Module
 
     public void setDefault(boolean isDefault) {
         this.isDefault = isDefault;
+        packagesChanged();
     }
 
     @Override
@@ -370,11 +717,33 @@ public class Module
         return cache;
     }
 
+    /**
+     * The intern table for types of declarations belonging
+     * to this module, or null if type interning is disabled 
+     * for this module.
+     */
+    public TypeInterner getTypeInterner() {
+        return interner;
+    }
+    
+    public void setTypeInterningEnabled(boolean enabled) {
+        if (!enabled) {
+            interner = null;
+        }
+        else if (interner == null) {
+            interner = new TypeInterner();
+        }
+    }
+
     public void clearCache(TypeDeclaration declaration) {
         TypeCache cache = getCache();
         if (cache != null){
             cache.clearForDeclaration(declaration);
         }
+        TypeInterner interner = getTypeInterner();
+        if (interner != null) {
+            interner.clear();
+        }
         // FIXME: propagate to modules that import this module transitively
         // Done in the IDE JDTModule
     }
@@ -403,6 +772,7 @@ public class Module
                 && newModuleImports != null) {
             overridenImports  = imports;
             imports = newModuleImports;
+            packagesChanged();
             return true;
         }
         return false;
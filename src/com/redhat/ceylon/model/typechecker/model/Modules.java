@@ -1,5 +1,7 @@
 package com.redhat.ceylon.model.typechecker.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -12,6 +14,7 @@ public class Modules {
     private Module languageModule;
     private Set<Module> modules = new TreeSet<Module>();
     private Module defaultModule;
+    private volatile boolean frozen;
 
     public Module getLanguageModule() {
         return languageModule;
@@ -32,4 +35,34 @@ public class Modules {
     public Set<Module> getListOfModules() {
         return modules;
     }
+    
+    /**
+     * Freeze every module, and the set of modules, so 
+     * that the whole model may be read by many threads at 
+     * once, without locking. No module may be added once 
+     * the set of modules is frozen.
+     * 
+     * Nothing freezes the modules by itself. Whoever 
+     * drives type checking calls this once every phase 
+     * has run, or calls 
+     * <code>AbstractModelLoader.freeze()</code>, which 
+     * also loads the rest of the model, when there is a
+     * model loader.
+     * 
+     * @see Module#freeze()
+     */
+    public void freeze() {
+        if (!frozen) {
+            for (Module module: 
+                    new ArrayList<Module>(modules)) {
+                module.freeze();
+            }
+            modules = Collections.unmodifiableSet(modules);
+            frozen = true;
+        }
+    }
+    
+    public boolean isFrozen() {
+        return frozen;
+    }
 }
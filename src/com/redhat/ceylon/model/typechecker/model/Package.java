@@ -1,6 +1,7 @@
 package com.redhat.ceylon.model.typechecker.model;
 
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.formatPath;
+import static com.redhat.ceylon.model.typechecker.model.ModelUtil.getMatchingCandidates;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isNameMatching;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isOverloadedVersion;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isResolvable;
@@ -8,9 +9,11 @@ import static com.redhat.ceylon.model.typechecker.model.ModelUtil.lookupMember;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.lookupMemberForBackend;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.redhat.ceylon.common.Backends;
 
@@ -49,6 +52,9 @@ public class Package
     }
     
     public Iterable<Unit> getUnits() {
+        if (frozen) {
+            return frozenUnits;
+        }
         synchronized (units) {
             return new ArrayList<Unit>(units);
         }
@@ -56,15 +62,81 @@ public class Package
     
     public void addUnit(Unit unit) {
         synchronized (units) {
+            checkNotFrozen();
             units.add(unit);
             members=null;
+            membersChanged();
         }
     }
     
     public void removeUnit(Unit unit) {
         synchronized (units) {
+            checkNotFrozen();
             units.remove(unit);
             members=null;
+            membersChanged();
+        }
+    }
+    
+    private final AtomicInteger membersVersion = 
+            new AtomicInteger();
+    
+    /**
+     * Incremented every time a member might have been 
+     * added to or removed from this package, so that 
+     * anyone who remembers the result of looking up a 
+     * member of the package knows when to look it up 
+     * again.
+     */
+    public int getMembersVersion() {
+        return membersVersion.get();
+    }
+    
+    protected void membersChanged() {
+        membersVersion.incrementAndGet();
+    }
+    
+    //set once the package is frozen, after which
+    //frozenUnits and members never change
+    private volatile boolean frozen;
+    private List<Unit> frozenUnits;
+    
+    /**
+     * Freeze the units of this package and its list of 
+     * members, forbidding any further modification, so 
+     * that they may be read by many threads at once, 
+     * without locking or copying.
+     * 
+     * @see Module#freeze()
+     */
+    public void freeze() {
+        synchronized (units) {
+            if (frozen) {
+                return;
+            }
+            for (Unit unit: units) {
+                unit.freeze();
+            }
+            MemberList list = 
+                    new MemberList(getMembersInternal());
+            list.freeze();
+            members = list;
+            frozenUnits = 
+                    Collections.unmodifiableList(
+                            new ArrayList<Unit>(units));
+            frozen = true;
+        }
+    }
+    
+    public boolean isFrozen() {
+        return frozen;
+    }
+    
+    protected void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException(
+                    "package is frozen: " + 
+                            getNameAsString());
         }
     }
     
@@ -80,6 +152,9 @@ public class Package
     
     @Override
     public List<Declaration> getMembers() {
+        if (frozen) {
+            return members;
+        }
         synchronized (units) {
             //return getMembersInternal();
             if (members==null) {
@@ -89,14 +164,27 @@ public class Package
         }
     }
     
+    /**
+     * The members of this package whose names or aliases
+     * might match the given prefix, for completion. The 
+     * caller must still check each member using 
+     * {@link ModelUtil#isNameMatching(String, Declaration)}.
+     */
+    public List<Declaration> getMatchingMembers(
+            String startingWith) {
+        return getMatchingCandidates(getMembers(), 
+                startingWith);
+    }
+    
     @Override
     public void addMember(Declaration declaration) {
+        checkNotFrozen();
         members=null;
+        membersChanged();
     }
     
     private List<Declaration> getMembersInternal() {
-        List<Declaration> result = 
-                new ArrayList<Declaration>();
+        List<Declaration> result = new MemberList();
         for (Unit unit: units) {
             for (Declaration d: unit.getDeclarations()) {
                 if (d.getContainer().equals(this)) {
@@ -255,7 +343,7 @@ public class Package
             int proximity) {
         Map<String,DeclarationWithProximity> result = 
                 new TreeMap<String,DeclarationWithProximity>();
-        for (Declaration d: getMembers()) {
+        for (Declaration d: getMatchingMembers(startingWith)) {
             if (isResolvable(d) && 
                     !isOverloadedVersion(d) && 
                     isNameMatching(startingWith, d)) {
@@ -272,7 +360,7 @@ public class Package
             List<Import> imports, int proximity) {
         Map<String,DeclarationWithProximity> result = 
                 new TreeMap<String,DeclarationWithProximity>();
-        for (Declaration d: getMembers()) {
+        for (Declaration d: getMatchingMembers(startingWith)) {
             if (isResolvable(d) && d.isShared() && 
                     !isOverloadedVersion(d) &&
                     isNameMatching(startingWith, d)) {
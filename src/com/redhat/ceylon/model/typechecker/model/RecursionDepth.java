@@ -0,0 +1,78 @@
+package com.redhat.ceylon.model.typechecker.model;
+
+/**
+ * The depth of recursion of type operations on the
+ * current thread. Certain operations on types are not
+ * decidable, so we limit the depth of recursion, and
+ * throw a {@link DecidabilityException} instead of
+ * overflowing the stack.
+ *
+ * There is one mutable instance per thread, so an
+ * operation looks it up once, when it is entered, and
+ * then increments and decrements a primitive counter,
+ * without boxing.
+ *
+ * @see Type#resetDepth(int)
+ */
+final class RecursionDepth {
+
+    private static final int MAXIMUM_DEPTH = 100;
+
+    private static final ThreadLocal<RecursionDepth> current =
+            new ThreadLocal<RecursionDepth>() {
+        @Override
+        protected RecursionDepth initialValue() {
+            return new RecursionDepth();
+        }
+    };
+
+    private int depth;
+
+    private RecursionDepth() {}
+
+    /**
+     * The recursion depth of the current thread.
+     */
+    static RecursionDepth current() {
+        return current.get();
+    }
+
+    /**
+     * Check the recursion depth of the current thread,
+     * and then increment it. The caller must call
+     * {@link #decrement()} on the returned instance,
+     * in a <code>finally</code> block.
+     *
+     * @throws DecidabilityException if the recursion is
+     *         too deep
+     */
+    static RecursionDepth enter() {
+        RecursionDepth result = current.get();
+        result.check();
+        result.depth++;
+        return result;
+    }
+
+    /**
+     * @throws DecidabilityException if the recursion is
+     *         too deep
+     */
+    void check() {
+        if (depth>MAXIMUM_DEPTH) {
+            throw new DecidabilityException();
+        }
+    }
+
+    void increment() {
+        depth++;
+    }
+
+    void decrement() {
+        depth--;
+    }
+
+    void reset(int initial) {
+        depth = initial;
+    }
+
+}
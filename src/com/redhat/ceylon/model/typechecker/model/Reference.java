@@ -1,14 +1,10 @@
 package com.redhat.ceylon.model.typechecker.model;
 
-import static com.redhat.ceylon.model.typechecker.model.Type.checkDepth;
-import static com.redhat.ceylon.model.typechecker.model.Type.decDepth;
-import static com.redhat.ceylon.model.typechecker.model.Type.incDepth;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.EMPTY_TYPE_ARG_MAP;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.EMPTY_VARIANCE_MAP;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isAbstraction;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.appliedType;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -65,15 +61,14 @@ public abstract class Reference {
 
     private Map<TypeParameter, Type> 
     getTypeArgumentsInternal(Declaration declaration) {
-        checkDepth();
-        incDepth();
+        RecursionDepth depth = RecursionDepth.enter();
         try {
             return fillInDefaultTypeArguments(
                     declaration,
                     typeArguments);
         }
         finally { 
-            decDepth();
+            depth.decrement();
         }
     }
 
@@ -94,7 +89,7 @@ public abstract class Reference {
                 if (typeArguments == typeArgs) {
                     // make a copy big enough to fit every type parameter
                     typeArgs = 
-                            new HashMap<TypeParameter,Type>
+                            new TypeParameterMap<Type>
                                 (typeParameters.size());
                     typeArgs.putAll(typeArguments);
                 }
@@ -109,6 +104,7 @@ public abstract class Reference {
     void setTypeArguments
         (Map<TypeParameter,Type> typeArguments) {
         this.typeArguments = typeArguments;
+        this.typeArgumentsWithDefaults = null;
     }
     
     /**
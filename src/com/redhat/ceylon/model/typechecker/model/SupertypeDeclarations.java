@@ -0,0 +1,231 @@
+package com.redhat.ceylon.model.typechecker.model;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import com.redhat.ceylon.model.typechecker.context.TypeCache;
+
+/**
+ * The memoised supertype declarations of a type
+ * declaration, along with an index which answers
+ * {@link TypeDeclaration#inherits(TypeDeclaration)}
+ * with a single bit test: each supertype declaration
+ * sets the bit of its {@link TypeCache#getOrdinal
+ * ordinal} in the bitset of its module.
+ *
+ * The supertype declarations are only current as long
+ * as the extended and satisfied types of every
+ * declaration they were collected from, including
+ * aliases, which don't occur in the list themselves,
+ * haven't changed, and as long as the ordinals of
+ * their modules haven't been forgotten. Checking that
+ * is usually a single comparison of the {@link 
+ * TypeCache#getSupertypesStamp() stamp} they were last 
+ * known to be current as of. Only after the supertypes
+ * of some declaration change, or some module forgets 
+ * its ordinals, are the versions of the declarations 
+ * they depend on compared again.
+ *
+ * @see TypeDeclaration#getSupertypeDeclarations()
+ */
+final class SupertypeDeclarations {
+
+    final List<TypeDeclaration> list;
+
+    private final TypeDeclaration[] dependencies;
+    private final int[] versions;
+
+    private final Module[] modules;
+    private final int[] epochs;
+    private final BitSet[] ordinals;
+    
+    private volatile int stamp;
+
+    SupertypeDeclarations(TypeDeclaration declaration,
+            List<TypeDeclaration> list, int stamp) {
+        this.list = unmodifiableList(list);
+        this.stamp = stamp;
+        //read the versions after collecting the list,
+        //since collecting it may load supertypes
+        List<TypeDeclaration> dependencies =
+                new ArrayList<TypeDeclaration>(list.size()+2);
+        collectDependencies(declaration, dependencies);
+        for (int i=0, l=list.size(); i<l; i++) {
+            collectDependencies(list.get(i), dependencies);
+        }
+        int size = dependencies.size();
+        this.dependencies =
+                dependencies.toArray(new TypeDeclaration[size]);
+        versions = new int[size];
+        for (int i=0; i<size; i++) {
+            versions[i] =
+                    this.dependencies[i].observeSupertypesVersion();
+        }
+        Module[] modules = new Module[2];
+        int[] epochs = new int[2];
+        BitSet[] ordinals = new BitSet[2];
+        int count = 0;
+        for (int i=0, l=list.size(); i<l; i++) {
+            TypeDeclaration std = list.get(i);
+            Module module = std.getOrdinalModule();
+            TypeCache cache =
+                    module==null ? null : module.getCache();
+            if (cache==null) {
+                //can't index this declaration, so
+                //don't use the index at all
+                count = -1;
+                break;
+            }
+            int j = 0;
+            while (j<count && modules[j]!=module) {
+                j++;
+            }
+            if (j==count) {
+                if (count==modules.length) {
+                    Module[] ms = new Module[count*2];
+                    System.arraycopy(modules, 0, ms, 0, count);
+                    modules = ms;
+                    int[] es = new int[count*2];
+                    System.arraycopy(epochs, 0, es, 0, count);
+                    epochs = es;
+                    BitSet[] os = new BitSet[count*2];
+                    System.arraycopy(ordinals, 0, os, 0, count);
+                    ordinals = os;
+                }
+                modules[count] = module;
+                epochs[count] = cache.getOrdinalsEpoch();
+                ordinals[count] = new BitSet();
+                count++;
+            }
+            ordinals[j].set(std.getOrdinal(cache));
+        }
+        if (count<0) {
+            this.modules = null;
+            this.epochs = null;
+            this.ordinals = null;
+        }
+        else {
+            this.modules = new Module[count];
+            System.arraycopy(modules, 0, this.modules, 0, count);
+            this.epochs = new int[count];
+            System.arraycopy(epochs, 0, this.epochs, 0, count);
+            this.ordinals = new BitSet[count];
+            System.arraycopy(ordinals, 0, this.ordinals, 0, count);
+        }
+    }
+
+    /**
+     * Collect the given declaration, and every declaration
+     * reachable through its extended, satisfied, and case
+     * types, each once.
+     */
+    private static void collectDependencies(TypeDeclaration dec,
+            List<TypeDeclaration> dependencies) {
+        if (dec==null) {
+            return;
+        }
+        for (int i=0, l=dependencies.size(); i<l; i++) {
+            if (dependencies.get(i)==dec) {
+                return;
+            }
+        }
+        dependencies.add(dec);
+        Type et = dec.getExtendedType();
+        if (et!=null) {
+            collectDependencies(et.getDeclaration(),
+                    dependencies);
+        }
+        List<Type> sts = dec.getSatisfiedTypes();
+        for (int i=0, l=sts.size(); i<l; i++) {
+            Type st = sts.get(i);
+            if (st!=null) {
+                collectDependencies(st.getDeclaration(),
+                        dependencies);
+            }
+        }
+        if (dec instanceof UnionType) {
+            List<Type> cts = dec.getCaseTypes();
+            for (int i=0, l=cts.size(); i<l; i++) {
+                Type ct = cts.get(i);
+                if (ct!=null) {
+                    collectDependencies(ct.getDeclaration(),
+                            dependencies);
+                }
+            }
+        }
+    }
+
+    /**
+     * Have the supertypes of every declaration these
+     * supertype declarations were collected from stayed
+     * the same, and have the ordinals they're indexed by
+     * been remembered?
+     */
+    boolean isCurrent() {
+        int current = TypeCache.getSupertypesStamp();
+        if (stamp==current) {
+            return true;
+        }
+        for (int i=0; i<dependencies.length; i++) {
+            if (dependencies[i].getSupertypesVersion()
+                    !=versions[i]) {
+                return false;
+            }
+        }
+        if (modules!=null) {
+            for (int i=0; i<modules.length; i++) {
+                if (modules[i].getCache().getOrdinalsEpoch()
+                        !=epochs[i]) {
+                    return false;
+                }
+            }
+        }
+        //nothing we depend on changed, so we don't need
+        //to look again until something else changes
+        stamp = current;
+        return true;
+    }
+
+    /**
+     * Is the given declaration, or a declaration equal
+     * to it, one of the supertype declarations?
+     */
+    boolean contains(TypeDeclaration dec) {
+        if (modules==null) {
+            return list.contains(dec);
+        }
+        Module module = dec.getOrdinalModule();
+        if (module==null) {
+            return list.contains(dec);
+        }
+        for (int i=0; i<modules.length; i++) {
+            if (modules[i]==module) {
+                TypeCache cache = module.getCache();
+                if (cache==null ||
+                        cache.getOrdinalsEpoch()!=epochs[i]) {
+                    //the ordinals were forgotten since
+                    return list.contains(dec);
+                }
+                boolean result =
+                        ordinals[i].get(dec.getOrdinal(cache));
+                if (cache.getOrdinalsEpoch()!=epochs[i]) {
+                    //forgotten while we were looking
+                    return list.contains(dec);
+                }
+                return result;
+            }
+        }
+        for (int i=0; i<modules.length; i++) {
+            if (modules[i].equals(module)) {
+                //a distinct but equal module numbers its
+                //declarations differently
+                return list.contains(dec);
+            }
+        }
+        return false;
+    }
+
+}
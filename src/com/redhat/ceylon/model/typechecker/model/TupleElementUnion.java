@@ -0,0 +1,217 @@
+package com.redhat.ceylon.model.typechecker.model;
+
+import static com.redhat.ceylon.model.typechecker.model.ModelUtil.unionType;
+import static com.redhat.ceylon.model.typechecker.model.UnionBuilder.isNominal;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * The union of the element types of a tuple type, formed
+ * one element at a time, from the last element to the
+ * first, while {@link Unit#getTupleType} builds the
+ * nested instantiations of <code>Tuple</code>.
+ *
+ * Each step produces exactly the type that
+ * <code>unionType(union, elementType, unit)</code> would
+ * produce. But once the union has many cases, when the
+ * new element is a class or interface type whose
+ * declaration isn't related by inheritance to the
+ * declaration of any case of the union so far, it can't
+ * be a subtype or supertype of any case, and the new
+ * union is just the new element followed by the existing
+ * cases. Then we don't need to compare the new element to
+ * every existing case, which would make forming the tuple
+ * type quadratic in its length.
+ *
+ * Nor do we copy the existing cases. The cases are kept,
+ * in reverse order, in an array which grows at the end,
+ * and the case types of each union are a read-only view
+ * of a prefix of the array, so that the unions of the
+ * element types of every tail of the tuple share the same
+ * array.
+ */
+final class TupleElementUnion {
+
+    private final Unit unit;
+    private Type union;
+    private List<Type> cases;
+
+    //the cases, in reverse order, or null if the cases
+    //have changed since the array was last filled
+    private Type[] reversed;
+    private int count;
+
+    //true once the declarations of the cases are indexed
+    private boolean indexed;
+    //false if any case isn't a class or interface type, in
+    //which case we always fall back to unionType()
+    private boolean nominal = true;
+
+    //the declarations of the cases, and the declarations
+    //they inherit, perhaps including some declarations of
+    //cases which were later eliminated, which is harmless
+    private final Set<TypeDeclaration> declarations =
+            new HashSet<TypeDeclaration>();
+    private final Set<TypeDeclaration> supertypes =
+            new HashSet<TypeDeclaration>();
+
+    /**
+     * @param union the union of the element types of the
+     *        tail of the tuple
+     */
+    TupleElementUnion(Type union, Unit unit) {
+        this.unit = unit;
+        this.union = union;
+        if (union.isExactlyNothing()) {
+            cases = Collections.emptyList();
+        }
+        else if (union.isUnion()) {
+            cases = union.getCaseTypes();
+        }
+        else {
+            cases = Collections.singletonList(union);
+        }
+    }
+
+    /**
+     * The union of the element types so far.
+     */
+    Type getType() {
+        return union;
+    }
+
+    /**
+     * Add the type of the preceding element of the tuple
+     * to the union.
+     */
+    void add(Type elementType) {
+        if (!indexed &&
+                cases.size()>=UnionBuilder.THRESHOLD) {
+            //the union is wide enough that it's worth
+            //indexing the declarations of its cases
+            indexed = true;
+            for (int i=0, size=cases.size();
+                    nominal && i<size; i++) {
+                register(cases.get(i));
+            }
+        }
+        if (indexed && nominal &&
+                elementType.isWellDefined() &&
+                isNominal(elementType) &&
+                !related(elementType.getDeclaration())) {
+            append(elementType);
+            List<Type> list = new Cases(reversed, count);
+            UnionType ut = new UnionType(unit);
+            ut.setCaseTypes(list);
+            union = ut.getTypeOfWellDefinedCases();
+            cases = list;
+            register(elementType);
+        }
+        else {
+            union = unionType(union, elementType, unit);
+            cases = union.isUnion() ?
+                    union.getCaseTypes() :
+                    Collections.singletonList(union);
+            reversed = null;
+            //the cases of the new union are the new
+            //element, along with some of the existing
+            //cases, so there's no need to register them
+            //all again
+            if (indexed && nominal) {
+                register(elementType);
+            }
+        }
+    }
+
+    /**
+     * Add a case at the end of the array, first filling a
+     * new array with the existing cases if necessary. We
+     * never overwrite an element of the array, since some
+     * earlier union might be viewing it.
+     */
+    private void append(Type type) {
+        if (reversed==null) {
+            int size = cases.size();
+            reversed = new Type[size*2+1];
+            for (int i=0; i<size; i++) {
+                reversed[size-1-i] = cases.get(i);
+            }
+            count = size;
+        }
+        else if (count==reversed.length) {
+            reversed = Arrays.copyOf(reversed, count*2);
+        }
+        reversed[count++] = type;
+    }
+
+    /**
+     * Could a class or interface type with the given
+     * declaration be a subtype or supertype of some case
+     * of the union?
+     */
+    private boolean related(TypeDeclaration dec) {
+        if (declarations.contains(dec) ||
+                supertypes.contains(dec)) {
+            return true;
+        }
+        List<TypeDeclaration> decs =
+                dec.getSupertypeDeclarations();
+        for (int i=0, size=decs.size(); i<size; i++) {
+            if (declarations.contains(decs.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void register(Type type) {
+        if (type.isWellDefined() && isNominal(type)) {
+            TypeDeclaration dec = type.getDeclaration();
+            if (declarations.add(dec)) {
+                supertypes.addAll(
+                        dec.getSupertypeDeclarations());
+            }
+        }
+        else {
+            nominal = false;
+        }
+    }
+
+    /**
+     * A read-only view, in reverse order, of a prefix of
+     * an array of cases.
+     */
+    private static final class Cases 
+            extends AbstractList<Type>
+            implements RandomAccess {
+        
+        private final Type[] reversed;
+        private final int size;
+        
+        Cases(Type[] reversed, int size) {
+            this.reversed = reversed;
+            this.size = size;
+        }
+        
+        @Override
+        public Type get(int index) {
+            if (index<0 || index>=size) {
+                throw new IndexOutOfBoundsException();
+            }
+            return reversed[size-1-index];
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+    }
+
+}
@@ -20,15 +20,17 @@ import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.redhat.ceylon.model.loader.model.FunctionOrValueInterface;
 import com.redhat.ceylon.model.typechecker.context.TypeCache;
+import com.redhat.ceylon.model.typechecker.context.TypeInterner;
 import com.redhat.ceylon.model.typechecker.model.UnknownType.ErrorReporter;
 import com.redhat.ceylon.model.typechecker.util.TypePrinter;
 
@@ -55,6 +57,9 @@ public class Type extends Reference {
     
     // cache
     private int hashCode;
+    // the epoch of the intern table this type is the
+    // canonical instance of, or 0
+    private int internEpoch;
 //    private List<Type> typeArgumentList;
     
     private Map<TypeParameter,SiteVariance> varianceOverrides = 
@@ -99,16 +104,20 @@ public class Type extends Reference {
     
     public void setVariance(TypeParameter param, 
             SiteVariance variance) {
+        checkNotInterned();
         if (varianceOverrides.isEmpty()) {
             varianceOverrides = 
-                    new HashMap<TypeParameter,SiteVariance>();
+                    new TypeParameterMap<SiteVariance>();
         }
         varianceOverrides.put(param, variance);
+        structureChanged();
     }
     
     public void setVarianceOverrides(
             Map<TypeParameter,SiteVariance> varianceOverrides) {
+        checkNotInterned();
         this.varianceOverrides = varianceOverrides;
+        structureChanged();
     }
     
     Type() {}
@@ -119,7 +128,9 @@ public class Type extends Reference {
     }
     
     void setDeclaration(TypeDeclaration declaration) {
+        checkNotInterned();
         this.declaration = declaration;
+        structureChanged();
     }
     
     /**
@@ -140,16 +151,78 @@ public class Type extends Reference {
     }
     
     public void setTypeConstructor(boolean typeConstructor) {
+        checkNotInterned();
         this.typeConstructor = typeConstructor;
+        structureChanged();
     }
     
     public void setTypeConstructorParameter
             (TypeParameter typeConstructorParameter) {
+        checkNotInterned();
         this.typeConstructorParameter = typeConstructorParameter;
+        structureChanged();
     }
     
     private int exactlyNothing;
     
+    private int relationCacheable;
+    
+    private Summary summary;
+    private int summaryStamp;
+    
+    //moves whenever a type or type parameter which a
+    //memoised summary depends on changes, so that the
+    //memoised summaries of the types it occurs in, which 
+    //we can't reach from it, are computed again
+    private static final AtomicInteger summariesStamp = 
+            new AtomicInteger();
+    
+    static void summariesChanged() {
+        summariesStamp.incrementAndGet();
+    }
+    
+    /**
+     * Forget what we memoised about the structure of this 
+     * type, after a change to it.
+     */
+    private void structureChanged() {
+        relationCacheable = 0;
+        if (summary!=null) {
+            summary = null;
+            //the summaries of types this type occurs in
+            //might depend on it
+            summariesChanged();
+        }
+    }
+    
+    /**
+     * Interned types are shared by everyone who interned
+     * an equal type, and are compared by identity, so 
+     * they can't be modified.
+     */
+    private void checkNotInterned() {
+        if (internEpoch!=0) {
+            throw new UnsupportedOperationException(
+                    "type is interned: " + 
+                            asQualifiedString());
+        }
+    }
+    
+    @Override
+    void setTypeArguments(
+            Map<TypeParameter,Type> typeArguments) {
+        checkNotInterned();
+        super.setTypeArguments(typeArguments);
+        structureChanged();
+    }
+    
+    @Override
+    void setQualifyingType(Type qualifyingType) {
+        checkNotInterned();
+        super.setQualifyingType(qualifyingType);
+        structureChanged();
+    }
+    
     public boolean isExactlyNothing() {
         if (isNothing()) {
             return true;
@@ -170,13 +243,26 @@ public class Type extends Reference {
      * given type? 
      */
     public boolean isExactly(Type type) {
-        return type!=null && resolveAliases()
+        if (type==null) {
+            return false;
+        }
+        TypeCache cache = getRelationCache(type);
+        if (cache!=null) {
+            Boolean exactly = cache.isExactly(this, type);
+            if (exactly!=null) {
+                return exactly;
+            }
+        }
+        boolean exactly = resolveAliases()
                 .isExactlyInternal(type.resolveAliases());
+        if (cache!=null) {
+            cache.putExactly(this, type, exactly);
+        }
+        return exactly;
     }
     
     private boolean isExactlyInternal(Type type) {
-        checkDepth();
-        incDepth();
+        RecursionDepth depth = RecursionDepth.enter();
         try {
             if (isUnknown() || type.isUnknown()) {
                 return this==type;
@@ -382,7 +468,7 @@ public class Type extends Reference {
             }
         }
         finally {
-            decDepth();
+            depth.decrement();
         }
     }
 
@@ -549,8 +635,120 @@ public class Type extends Reference {
      * Is this type a subtype of the given type? 
      */
     public boolean isSubtypeOf(Type type) {
-        return type!=null && resolveAliases()
+        if (type==null) {
+            return false;
+        }
+        TypeCache cache = getRelationCache(type);
+        if (cache!=null) {
+            Boolean subtype = cache.isSubtype(this, type);
+            if (subtype!=null) {
+                return subtype;
+            }
+        }
+        boolean subtype = resolveAliases()
                 .isSubtypeOfInternal(type.resolveAliases());
+        if (cache!=null) {
+            cache.putSubtype(this, type, subtype);
+        }
+        return subtype;
+    }
+    
+    /**
+     * The cache of the results of subtyping and exact 
+     * equality checks between this type and the given 
+     * type, or null if the result should not be cached.
+     */
+    private TypeCache getRelationCache(Type type) {
+        if (isSimpleRelationOperand() && 
+                type.isSimpleRelationOperand()) {
+            //the check is cheap anyway, don't 
+            //crowd the cache with it
+            return null;
+        }
+        return type.canCacheRelation() ? getCache() : null;
+    }
+    
+    /**
+     * The cache of the module this type belongs to, if 
+     * caching is enabled, and if what we compute for this 
+     * type may be cached for every type equal to it, or 
+     * null otherwise.
+     */
+    public TypeCache getCache() {
+        if (!TypeCache.isEnabled() || 
+                !canCacheRelation()) {
+            return null;
+        }
+        Unit unit = getDeclaration().getUnit();
+        return unit==null ? null : unit.getCache();
+    }
+    
+    private boolean isSimpleRelationOperand() {
+        return !isUnion() && !isIntersection() &&
+                getDeclaration().getTypeParameters().isEmpty() &&
+                getQualifyingType()==null;
+    }
+    
+    /**
+     * Can the result of a subtyping or exact equality 
+     * check, or the union or intersection of this type 
+     * with other types, be cached? Not if it involves 
+     * something which isn't taken into account by 
+     * {@link #equals(Object)}, or unknown types, which
+     * are only ever identical. Memoised, like the hash 
+     * code.
+     */
+    boolean canCacheRelation() {
+        if (relationCacheable==0) {
+            relationCacheable = 
+                    canCacheRelationInternal() ? 1 : -1;
+        }
+        return relationCacheable>0;
+    }
+    
+    private boolean canCacheRelationInternal() {
+        if (isUnknown() || 
+                getUnderlyingType()!=null ||
+                !varianceOverrides.isEmpty() ||
+                isTypeConstructor() ||
+                getTypeConstructorParameter()!=null ||
+                isRaw()) {
+            return false;
+        }
+        if (isUnion()) {
+            List<Type> cts = 
+                    getDeclaration().getCaseTypes();
+            for (int i=0, size=cts.size(); i<size; i++) {
+                Type ct = cts.get(i);
+                if (ct==null || !ct.canCacheRelation()) {
+                    return false;
+                }
+            }
+        }
+        else if (isIntersection()) {
+            List<Type> sts = 
+                    getDeclaration().getSatisfiedTypes();
+            for (int i=0, size=sts.size(); i<size; i++) {
+                Type st = sts.get(i);
+                if (st==null || !st.canCacheRelation()) {
+                    return false;
+                }
+            }
+        }
+        else {
+            List<Type> tal = getTypeArgumentList();
+            for (int i=0, size=tal.size(); i<size; i++) {
+                Type ta = tal.get(i);
+                if (ta!=null && !ta.canCacheRelation()) {
+                    return false;
+                }
+            }
+            Type qt = getQualifyingType();
+            if (qt!=null && !qt.canCacheRelation()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -558,8 +756,7 @@ public class Type extends Reference {
      * a certain self type constraint.
      */
     private boolean isSubtypeOfInternal(Type type) {
-        checkDepth();
-        incDepth();
+        RecursionDepth depth = RecursionDepth.enter();
         try {
             if (type.isAnything()) {
                 return true;
@@ -704,7 +901,7 @@ public class Type extends Reference {
             }
         }
         finally { 
-            decDepth();
+            depth.decrement();
         }
     }
 
@@ -1202,7 +1399,8 @@ public class Type extends Reference {
             Map<TypeParameter, Type> substitutions, 
             Map<TypeParameter, SiteVariance> overrides,
             boolean covariant, boolean contravariant) {
-        if (!substitutions.isEmpty()) {
+        if (!substitutions.isEmpty() &&
+                !isUnaffectedBy(substitutions, overrides)) {
             Type type = this;
             if (overrides!=null) {
                 type = applyVarianceOverrides(this, 
@@ -1218,6 +1416,31 @@ public class Type extends Reference {
         }
     }
     
+    /**
+     * Is substitution into this type certain to produce
+     * the very same type? That's when none of the given
+     * type parameters occur in it, there are no variance
+     * overrides to apply, and there are no unions or 
+     * intersections to canonicalize, nor type constructors, 
+     * unknown types, missing type arguments or raw types, 
+     * which substitution doesn't preserve.
+     */
+    private boolean isUnaffectedBy(
+            Map<TypeParameter, Type> substitutions, 
+            Map<TypeParameter, SiteVariance> overrides) {
+        if (overrides!=null && !overrides.isEmpty()) {
+            return false;
+        }
+        Summary summary = getSummary();
+        return summary!=null &&
+                !summary.has(Summary.UNIONS_OR_INTERSECTIONS |
+                        Summary.TYPE_CONSTRUCTORS |
+                        Summary.UNKNOWNS |
+                        Summary.MISSING_ARGUMENTS |
+                        Summary.RAW) &&
+                !summary.involvesAnyOf(substitutions);
+    }
+    
     /**
      * Performs substitution of type arguments and variances
      * of the given type into this supertype of the given 
@@ -1235,7 +1458,8 @@ public class Type extends Reference {
     private Type substituteFromSubtype(
             Map<TypeParameter, Type> substitutions, 
             Map<TypeParameter, SiteVariance> overrides) {
-        if (!substitutions.isEmpty()) {
+        if (!substitutions.isEmpty() &&
+                !isUnaffectedBy(substitutions, overrides)) {
             Type type = this;
             if (overrides!=null) {
                 type = applyVarianceOverrides(this, 
@@ -1475,6 +1699,10 @@ public class Type extends Reference {
         }
         
         if (canCache) {
+            if (superType!=null) {
+                //cached supertypes are shared anyway
+                superType = superType.intern();
+            }
             TypeCache cache = dec.getUnit().getCache();
             cache.put(this, dec, superType);
         }
@@ -1551,8 +1779,7 @@ public class Type extends Reference {
      * satisfying the given predicate. 
      */
     public Type getSupertype(Criteria c) {
-        checkDepth();
-        incDepth();
+        RecursionDepth depth = RecursionDepth.enter();
         try {
             if (c.satisfies(getDeclaration())) {
                 return qualifiedByDeclaringType();
@@ -1574,7 +1801,7 @@ public class Type extends Reference {
             }
         }
         finally {
-            decDepth();
+            depth.decrement();
         }
     }
     
@@ -1645,29 +1872,8 @@ public class Type extends Reference {
         return result;
     }
     
-    private static ThreadLocal<Integer> depth = 
-            new ThreadLocal<Integer>() {
-        protected Integer initialValue() {
-            return 0;
-        }
-    };
-    
     public static void resetDepth(int initial) {
-        depth.set(initial);
-    }
-    
-    static void checkDepth() {
-        if (depth.get()>100) {
-            throw new DecidabilityException();
-        }
-    }
-    
-    static void decDepth() {
-        depth.set(depth.get()-1);
-    }
-
-    static void incDepth() {
-        depth.set(depth.get()+1);
+        RecursionDepth.current().reset(initial);
     }
     
     private Type getPrincipalInstantiation(Criteria c) {
@@ -1809,7 +2015,7 @@ public class Type extends Reference {
                 new ArrayList<Type>
                     (typeParameters.size());
         Map<TypeParameter,SiteVariance> variances = 
-                new HashMap<TypeParameter,SiteVariance>();
+                new TypeParameterMap<SiteVariance>();
         for (TypeParameter tp: typeParameters) {
             Type result;
             Unit unit = getDeclaration().getUnit();
@@ -2303,6 +2509,10 @@ public class Type extends Reference {
      * unknowns?
      */
     public boolean containsUnknowns() {
+        Summary summary = getSummary();
+        if (summary!=null) {
+            return summary.has(Summary.UNKNOWNS);
+        }
         if (isUnknown()) {
             return true;
         }
@@ -2431,6 +2641,13 @@ public class Type extends Reference {
     }
 
     public boolean involvesDeclaration(TypeDeclaration td) {
+        if (td instanceof TypeParameter) {
+            Summary summary = getSummary();
+            if (summary!=null) {
+                return summary.has(Summary.MISSING_ARGUMENTS) ||
+                        summary.occurrences((TypeParameter) td)!=0;
+            }
+        }
         return involvesDeclaration(td, 
                 new ArrayList<Type>());
     }
@@ -2482,6 +2699,11 @@ public class Type extends Reference {
     }
 
     public boolean occursInvariantly(TypeParameter tp) {
+        Summary summary = getSummary();
+        if (summary!=null) {
+            return (summary.occurrences(tp) & 
+                    Summary.INVARIANT)!=0;
+        }
         return occursInvariantly(tp, true, false);
     }
 
@@ -2556,6 +2778,11 @@ public class Type extends Reference {
     }
 
     public boolean occursCovariantly(TypeParameter tp) {
+        Summary summary = getSummary();
+        if (summary!=null) {
+            return (summary.occurrences(tp) & 
+                    Summary.COVARIANT)!=0;
+        }
         return occursCovariantly(tp, true);
     }
 
@@ -2612,6 +2839,11 @@ public class Type extends Reference {
     }
 
     public boolean occursContravariantly(TypeParameter tp) {
+        Summary summary = getSummary();
+        if (summary!=null) {
+            return (summary.occurrences(tp) & 
+                    Summary.CONTRAVARIANT)!=0;
+        }
         return occursContravariantly(tp, true);
     }
 
@@ -2793,9 +3025,8 @@ public class Type extends Reference {
             //Need to guard against stack overflows here,
             //since DefaultTypeArgVisitor catches our
             //thrown DecidabilityException
-            checkDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
-                incDepth();
             TypeDeclaration dec;
             TypeDeclaration ptd = type.getDeclaration();
             Unit unit = ptd.getUnit();
@@ -2891,7 +3122,7 @@ public class Type extends Reference {
             }
             }
             finally {
-                decDepth();
+                depth.decrement();
             }
         }
 
@@ -2981,7 +3212,7 @@ public class Type extends Reference {
                 Type result) {
             TypeDeclaration sd = result.getDeclaration();
             Map<TypeParameter, SiteVariance> map = 
-                    new HashMap<TypeParameter, SiteVariance>();
+                    new TypeParameterMap<SiteVariance>();
             map.putAll(result.getVarianceOverrides());
             List<TypeParameter> sdtps = 
                     sd.getTypeParameters();
@@ -3041,7 +3272,7 @@ public class Type extends Reference {
                 Map<TypeParameter, Type> typeArguments = 
                         type.getTypeArguments();
                 Map<TypeParameter, Type> typeArgs = 
-                        new HashMap<TypeParameter, Type>
+                        new TypeParameterMap<Type>
                             (typeArguments.size());
                 for (Map.Entry<TypeParameter, Type> e: 
                         typeArguments.entrySet()) {
@@ -3222,56 +3453,50 @@ public class Type extends Reference {
     }
 
     public String asString(boolean abbreviate, Unit unit) {
-        return new TypePrinter(abbreviate)
-                        .print(this, unit);
+        return (abbreviate ? 
+                    TypePrinter.DEFAULT : 
+                    UNABBREVIATED_PRINTER)
+                .print(this, unit);
     }
+    
+    private static final TypePrinter UNABBREVIATED_PRINTER = 
+            new TypePrinter(false);
+    
+    //identifies qualified names in the cache of printed 
+    //types, distinct from every format of TypePrinter
+    private static final int QUALIFIED_FORMAT = -1;
 
-    private String qualifiedName() {
-        StringBuilder ptn = new StringBuilder();
-        if (isTypeConstructor()) {
-            return asString();
-        }
-        Type qt = getQualifyingType();
+    public String asQualifiedString() {
         TypeDeclaration declaration = getDeclaration();
-        if (qt!=null) {
-            ptn.append(qt.asQualifiedString())
-               .append(".")
-               .append(declaration.getName());
-        }
-        //}
-        else {
-            ptn.append(declaration.getQualifiedNameString());
+        if (declaration==null) {
+            //unknown type
+            return null;
         }
-        if (!getTypeArgumentList().isEmpty()) {
-            ptn.append("<");
-            boolean first = true;
-            for (Type t: getTypeArgumentList()) {
-                if (first) {
-                    first = false;
-                }
-                else {
-                    ptn.append(",");
-                }
-                if (t==null) {
-                    ptn.append("unknown");
-                }
-                else {
-                    ptn.append(t.asQualifiedString());
-                }
+        TypeCache cache = getCache();
+        if (cache!=null) {
+            String cached = 
+                    cache.getPrinted(QUALIFIED_FORMAT, 
+                            this, null);
+            if (cached!=null) {
+                return cached;
             }
-            ptn.append(">");
         }
-        return ptn.toString();
+        StringBuilder name = new StringBuilder();
+        appendQualifiedString(name);
+        String result = name.toString();
+        if (cache!=null) {
+            cache.putPrinted(QUALIFIED_FORMAT, 
+                    this, null, result);
+        }
+        return result;
     }
-
-    public String asQualifiedString() {
-        TypeDeclaration declaration = getDeclaration();
-        if (declaration==null) {
+    
+    private void appendQualifiedString(StringBuilder name) {
+        if (getDeclaration()==null) {
             //unknown type
-            return null;
+            name.append("null");
         }
-        if (isUnion()) {
-            StringBuilder name = new StringBuilder();
+        else if (isUnion()) {
             boolean first = true;
             for (Type pt: getCaseTypes()) {
                 if (first) {
@@ -3284,13 +3509,11 @@ public class Type extends Reference {
                     name.append("unknown");
                 }
                 else {
-                    name.append(pt.asQualifiedString());
+                    pt.appendQualifiedString(name);
                 }
             }
-            return name.toString();
         }
         else if (isIntersection()) {
-            StringBuilder name = new StringBuilder();
             boolean first = true;
             for (Type pt: getSatisfiedTypes()) {
                 if (first) {
@@ -3303,13 +3526,49 @@ public class Type extends Reference {
                     name.append("unknown");
                 }
                 else {
-                    name.append(pt.asQualifiedString());
+                    pt.appendQualifiedString(name);
                 }
             }
-            return name.toString();
         }
         else {            
-            return qualifiedName();
+            appendQualifiedName(name);
+        }
+    }
+
+    private void appendQualifiedName(StringBuilder ptn) {
+        if (isTypeConstructor()) {
+            ptn.append(asString());
+            return;
+        }
+        Type qt = getQualifyingType();
+        TypeDeclaration declaration = getDeclaration();
+        if (qt!=null) {
+            qt.appendQualifiedString(ptn);
+            ptn.append(".")
+               .append(declaration.getName());
+        }
+        //}
+        else {
+            ptn.append(declaration.getQualifiedNameString());
+        }
+        if (!getTypeArgumentList().isEmpty()) {
+            ptn.append("<");
+            boolean first = true;
+            for (Type t: getTypeArgumentList()) {
+                if (first) {
+                    first = false;
+                }
+                else {
+                    ptn.append(",");
+                }
+                if (t==null) {
+                    ptn.append("unknown");
+                }
+                else {
+                    t.appendQualifiedString(ptn);
+                }
+            }
+            ptn.append(">");
         }
     }
 
@@ -3416,7 +3675,9 @@ public class Type extends Reference {
     }
     
     public void setUnderlyingType(String underlyingType) {
+        checkNotInterned();
         this.underlyingType = underlyingType;
+        structureChanged();
         // if we have a resolvedAliases cache, update it too
         if (resolvedAliases != null && 
             resolvedAliases != this) {
@@ -3554,7 +3815,9 @@ public class Type extends Reference {
     }
 
     public void setRaw(boolean isRaw) {
+        checkNotInterned();
         this.isRaw = isRaw;
+        structureChanged();
         // if we have a resolvedAliases cache, update it too
         if (resolvedAliases != null && 
             resolvedAliases != this) {
@@ -3573,9 +3836,10 @@ public class Type extends Reference {
     public Type resolveAliases() {
         if (resolvedAliases == null) {
             // really compute it
-            checkDepth();
+            RecursionDepth depth = RecursionDepth.current();
+            depth.check();
             if (!isTuple()) {
-                incDepth();
+                depth.increment();
             }
             try {
                 resolvedAliases = resolveAliasesInternal();
@@ -3587,7 +3851,7 @@ public class Type extends Reference {
             }
             finally {
                 if (!isTuple()) {
-                    decDepth();
+                    depth.decrement();
                 }
             }
             // mark it as resolved so it doesn't get resolved again
@@ -3601,6 +3865,16 @@ public class Type extends Reference {
         return resolvedAliases;
     }
 
+    private boolean isUnaliased() {
+        Summary summary = getSummary();
+        return summary!=null &&
+                !summary.has(Summary.ALIASES |
+                        Summary.UNIONS_OR_INTERSECTIONS |
+                        Summary.TYPE_CONSTRUCTORS |
+                        Summary.UNKNOWNS |
+                        Summary.MISSING_ARGUMENTS);
+    }
+    
     private Type resolveAliasesInternal() {
         TypeDeclaration dec = getDeclaration();
         Unit unit = dec.getUnit();
@@ -3613,6 +3887,10 @@ public class Type extends Reference {
         else if (isTypeConstructor()) {
             return this;
         }
+        else if (isUnaliased()) {
+            //nothing to expand or canonicalize
+            return this;
+        }
         else if (isUnion()) {
             List<Type> caseTypes = 
                     getCaseTypes();
@@ -3731,7 +4009,327 @@ public class Type extends Reference {
         return ret;
     }*/
     
+    /**
+     * A summary of what occurs in a type: the type 
+     * parameters which occur in it, along with the 
+     * variances of the positions they occur in, and 
+     * whether it involves unknown types, aliases, unions 
+     * or intersections, etc. It lets us answer questions 
+     * like {@link #occursCovariantly(TypeParameter)} and 
+     * {@link #containsUnknowns()} without walking the 
+     * whole type, and lets {@link #substitute(Map, Map)} 
+     * and {@link #resolveAliases()} return the type itself 
+     * when there is nothing to do.
+     */
+    private static final class Summary {
+        
+        //how a type parameter occurs
+        static final int COVARIANT = 1;
+        static final int CONTRAVARIANT = 2;
+        static final int INVARIANT = 4;
+        //not inside the arguments of an applied
+        //type constructor parameter
+        static final int DIRECT = 8;
+        //occurs at all
+        static final int PRESENT = 16;
+        
+        //what else occurs
+        static final int UNKNOWNS = 1;
+        static final int MISSING_ARGUMENTS = 2;
+        static final int ALIASES = 4;
+        static final int UNIONS_OR_INTERSECTIONS = 8;
+        static final int TYPE_CONSTRUCTORS = 16;
+        static final int RAW = 32;
+        
+        private static final TypeParameter[] NO_TYPE_PARAMETERS = 
+                new TypeParameter[0];
+        private static final int[] NO_OCCURRENCES = new int[0];
+        static final Summary EMPTY = new Summary(0);
+        static final Summary UNKNOWN = new Summary(UNKNOWNS);
+        
+        final int flags;
+        final TypeParameter[] typeParameters;
+        final int[] occurrences;
+        
+        private Summary(int flags) {
+            this(flags, NO_TYPE_PARAMETERS, NO_OCCURRENCES);
+        }
+        
+        private Summary(int flags, 
+                TypeParameter[] typeParameters, 
+                int[] occurrences) {
+            this.flags = flags;
+            this.typeParameters = typeParameters;
+            this.occurrences = occurrences;
+        }
+        
+        boolean has(int flag) {
+            return (flags & flag)!=0;
+        }
+        
+        int occurrences(TypeParameter tp) {
+            for (int i=0; i<typeParameters.length; i++) {
+                if (typeParameters[i].equals(tp)) {
+                    return occurrences[i];
+                }
+            }
+            return 0;
+        }
+        
+        boolean involvesTypeParameters() {
+            for (int i=0; i<occurrences.length; i++) {
+                if ((occurrences[i] & DIRECT)!=0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        boolean involvesTypeParameters(
+                Collection<TypeParameter> params) {
+            for (int i=0; i<occurrences.length; i++) {
+                if ((occurrences[i] & DIRECT)!=0 &&
+                        params.contains(typeParameters[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        boolean involvesAnyOf(
+                Map<TypeParameter,?> substitutions) {
+            for (int i=0; i<typeParameters.length; i++) {
+                if (substitutions.containsKey(typeParameters[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Accumulates a {@link Summary} from the summaries of 
+     * the parts of a type.
+     */
+    private static final class SummaryBuilder {
+        
+        int flags;
+        TypeParameter[] typeParameters = 
+                Summary.NO_TYPE_PARAMETERS;
+        int[] occurrences = Summary.NO_OCCURRENCES;
+        int size;
+        
+        void add(TypeParameter tp, int occurrence) {
+            for (int i=0; i<size; i++) {
+                if (typeParameters[i].equals(tp)) {
+                    occurrences[i] |= occurrence;
+                    return;
+                }
+            }
+            if (size==typeParameters.length) {
+                int length = size==0 ? 2 : size*2;
+                typeParameters = 
+                        Arrays.copyOf(typeParameters, length);
+                occurrences = 
+                        Arrays.copyOf(occurrences, length);
+            }
+            typeParameters[size] = tp;
+            occurrences[size] = occurrence;
+            size++;
+        }
+        
+        //how a part of the type occurs in it
+        static final int SAME = 0;
+        static final int FLIPPED = 1;
+        static final int INVARIANT = 2;
+        //an extra type argument with no corresponding 
+        //type parameter
+        static final int UNRELATED = 3;
+        
+        /**
+         * Add the summary of a part of the type, which 
+         * occurs covariantly, contravariantly, or 
+         * invariantly in the type, and maybe inside the
+         * arguments of an applied type constructor 
+         * parameter.
+         */
+        void add(Summary summary, int position, 
+                boolean indirect, int ignoredFlags) {
+            flags |= summary.flags & ~ignoredFlags;
+            for (int i=0; i<summary.typeParameters.length; i++) {
+                int occurrence = summary.occurrences[i];
+                int variance;
+                switch (position) {
+                case INVARIANT:
+                    variance = Summary.INVARIANT;
+                    break;
+                case FLIPPED:
+                    variance = 
+                        occurrence & Summary.INVARIANT |
+                        ((occurrence & Summary.COVARIANT)!=0 ? 
+                                Summary.CONTRAVARIANT : 0) |
+                        ((occurrence & Summary.CONTRAVARIANT)!=0 ? 
+                                Summary.COVARIANT : 0);
+                    break;
+                case UNRELATED:
+                    variance = 0;
+                    break;
+                default:
+                    variance = occurrence & 
+                        (Summary.COVARIANT |
+                         Summary.CONTRAVARIANT |
+                         Summary.INVARIANT);
+                }
+                int direct = indirect ? 0 : 
+                    occurrence & Summary.DIRECT;
+                add(summary.typeParameters[i], 
+                        variance | direct | Summary.PRESENT);
+            }
+        }
+        
+        Summary build() {
+            if (size==0) {
+                if (flags==0) {
+                    return Summary.EMPTY;
+                }
+                else if (flags==Summary.UNKNOWNS) {
+                    return Summary.UNKNOWN;
+                }
+                else {
+                    return new Summary(flags);
+                }
+            }
+            else {
+                return new Summary(flags,
+                        Arrays.copyOf(typeParameters, size),
+                        Arrays.copyOf(occurrences, size));
+            }
+        }
+    }
+    
+    /**
+     * The summary of what occurs in this type, memoised 
+     * when the type cache is enabled, or null if it is 
+     * disabled, since the declarations involved in the 
+     * type might still be changing.
+     */
+    private Summary getSummary() {
+        if (!TypeCache.isEnabled()) {
+            return null;
+        }
+        return summary();
+    }
+    
+    /**
+     * The memoised summary, if nothing it depends on, 
+     * including the types this type is made of, and the 
+     * variances of type parameters, changed since it was
+     * computed.
+     */
+    private Summary summary() {
+        Summary result = summary;
+        int stamp = summariesStamp.get();
+        if (result==null || summaryStamp!=stamp) {
+            result = summarize();
+            summaryStamp = stamp;
+            summary = result;
+        }
+        return result;
+    }
+    
+    private Summary summarize() {
+        if (isUnknown()) {
+            return Summary.UNKNOWN;
+        }
+        else if (isNothing()) {
+            return Summary.EMPTY;
+        }
+        SummaryBuilder builder = new SummaryBuilder();
+        TypeDeclaration dec = getDeclaration();
+        if (isUnion() || isIntersection()) {
+            builder.flags |= Summary.UNIONS_OR_INTERSECTIONS;
+            List<Type> types = isUnion() ? 
+                    dec.getCaseTypes() : 
+                    dec.getSatisfiedTypes();
+            for (int i=0, size=types.size(); i<size; i++) {
+                Type type = types.get(i);
+                if (type!=null) {
+                    builder.add(type.summary(), 
+                            SummaryBuilder.SAME, false, 0);
+                }
+            }
+            return builder.build();
+        }
+        boolean typeParameter = isTypeParameter();
+        if (typeParameter) {
+            TypeParameter tp = (TypeParameter) dec;
+            tp.summarized();
+            builder.add(tp, 
+                    Summary.COVARIANT | 
+                    Summary.DIRECT | 
+                    Summary.PRESENT);
+            if (tp.isTypeConstructor()) {
+                builder.flags |= Summary.TYPE_CONSTRUCTORS;
+            }
+        }
+        if (dec.isAlias()) {
+            builder.flags |= Summary.ALIASES;
+        }
+        if (isTypeConstructor() || 
+                getTypeConstructorParameter()!=null) {
+            builder.flags |= Summary.TYPE_CONSTRUCTORS;
+        }
+        if (isRaw()) {
+            builder.flags |= Summary.RAW;
+        }
+        Type qt = getQualifyingType();
+        if (qt!=null) {
+            builder.add(qt.summary(), 
+                    SummaryBuilder.SAME, typeParameter, 0);
+        }
+        //the arguments of a type constructor don't 
+        //count as unknown, see containsUnknowns()
+        int ignoredFlags = 
+                isTypeConstructor() ? Summary.UNKNOWNS : 0;
+        List<TypeParameter> tps = dec.getTypeParameters();
+        List<Type> tas = getTypeArgumentList();
+        for (int i=0, size=tas.size(); i<size; i++) {
+            Type at = tas.get(i);
+            if (at==null) {
+                builder.flags |= 
+                        Summary.MISSING_ARGUMENTS | 
+                        Summary.UNKNOWNS & ~ignoredFlags;
+            }
+            else {
+                int position;
+                if (i>=tps.size()) {
+                    position = SummaryBuilder.UNRELATED;
+                }
+                else {
+                    TypeParameter itp = tps.get(i);
+                    itp.summarized();
+                    if (isCovariant(itp)) {
+                        position = SummaryBuilder.SAME;
+                    }
+                    else if (isContravariant(itp)) {
+                        position = SummaryBuilder.FLIPPED;
+                    }
+                    else {
+                        position = SummaryBuilder.INVARIANT;
+                    }
+                }
+                builder.add(at.summary(), position, 
+                        typeParameter, ignoredFlags);
+            }
+        }
+        return builder.build();
+    }
+    
     public boolean involvesTypeParameters() {
+        Summary summary = getSummary();
+        if (summary!=null) {
+            return summary.involvesTypeParameters();
+        }
         if (isTypeParameter()) {
             return true;
         }
@@ -3771,6 +4369,10 @@ public class Type extends Reference {
     
     public boolean involvesTypeParameters(
             Collection<TypeParameter> params) {
+        Summary summary = getSummary();
+        if (summary!=null) {
+            return summary.involvesTypeParameters(params);
+        }
         TypeDeclaration d = getDeclaration();
         if (isTypeParameter()) {
             if (params.contains(d)) {
@@ -4155,7 +4757,7 @@ public class Type extends Reference {
         }
         else {
             Map<TypeParameter,SiteVariance> overrides = 
-                    new HashMap<TypeParameter,SiteVariance>
+                    new TypeParameterMap<SiteVariance>
                         (varianceOverrides);
             overrides.putAll(qualifyingOverrides);
             return overrides;
@@ -4281,7 +4883,7 @@ public class Type extends Reference {
                     new ArrayList<Type>
                         (args.size());
             Map<TypeParameter,SiteVariance> varianceResults = 
-                    new HashMap<TypeParameter,SiteVariance>
+                    new TypeParameterMap<SiteVariance>
                             (type.getVarianceOverrides());
             for (int i = 0; i<args.size(); i++) {
                 Type arg = args.get(i);
@@ -4344,6 +4946,195 @@ public class Type extends Reference {
         }
     }
     
+    /**
+     * Is this type the canonical instance of an intern 
+     * table?
+     * 
+     * @see Type#intern()
+     */
+    public boolean isInterned() {
+        return internEpoch!=0;
+    }
+    
+    /**
+     * Get the canonical instance of this type from the 
+     * intern table of the module of its declaration, so
+     * that equal types become reference-identical and can 
+     * be compared with a single identity check. The types 
+     * it is made of are interned in the same table, even 
+     * if their declarations belong to other modules.
+     * Returns this type if type interning is not enabled 
+     * for that module, or if this type, or a type it is 
+     * made of, carries information which is not taken 
+     * into account by {@link Type#equals(Object)}, such 
+     * as an underlying type.
+     * 
+     * This type is never modified. If no equal type was 
+     * interned yet, a copy of it becomes the canonical 
+     * instance. Interned types are shared, and so they 
+     * can't be modified.
+     */
+    public Type intern() {
+        if (internEpoch!=0) {
+            return this;
+        }
+        TypeDeclaration dec = getDeclaration();
+        Unit unit = dec==null ? null : dec.getUnit();
+        Package pkg = unit==null ? null : unit.getPackage();
+        Module module = pkg==null ? null : pkg.getModule();
+        TypeInterner interner = 
+                module==null ? null : 
+                    module.getTypeInterner();
+        if (interner==null) {
+            return this;
+        }
+        Type canonical = internIn(interner.getTable());
+        return canonical==null ? this : canonical;
+    }
+    
+    /**
+     * The canonical instance of this type in the given 
+     * table, or null if this type can't be interned.
+     */
+    private Type internIn(TypeInterner.Table table) {
+        if (internEpoch!=0 && 
+                internEpoch==table.getEpoch()) {
+            return this;
+        }
+        TypeDeclaration dec = getDeclaration();
+        if (dec==null || 
+                isUnion() || isIntersection() || 
+                isUnknown() || isTypeConstructor() || 
+                typeConstructorParameter!=null ||
+                underlyingType!=null || isRaw) {
+            //union and intersection types don't belong
+            //to the module of their declaration
+            return null;
+        }
+        Type canonical = table.get(this);
+        if (canonical!=null) {
+            return canonical;
+        }
+        //first intern the types we're made of, so that 
+        //equal types share their structure
+        Type qt = getQualifyingType();
+        Type iqt = null;
+        if (qt!=null) {
+            iqt = qt.internIn(table);
+            if (iqt==null) {
+                return null;
+            }
+        }
+        Map<TypeParameter,Type> args = getTypeArguments();
+        Map<TypeParameter,Type> iargs = 
+                new TypeParameterMap<Type>(args.size());
+        for (Map.Entry<TypeParameter,Type> e: 
+                args.entrySet()) {
+            Type arg = e.getValue();
+            Type iarg = 
+                    arg==null ? null : 
+                        arg.internIn(table);
+            if (iarg==null) {
+                return null;
+            }
+            iargs.put(e.getKey(), iarg);
+        }
+        Type copy = new Type();
+        copy.setDeclaration(dec);
+        copy.setQualifyingType(iqt);
+        copy.setTypeArguments(iargs);
+        if (!varianceOverrides.isEmpty()) {
+            copy.setVarianceOverrides(
+                    new TypeParameterMap<SiteVariance>
+                        (varianceOverrides));
+        }
+        canonical = table.putIfAbsent(copy);
+        if (canonical==null) {
+            //only now, since until it's in the table
+            //it's not the canonical instance
+            copy.internEpoch = table.getEpoch();
+            return copy;
+        }
+        else {
+            return canonical;
+        }
+    }
+
+    /**
+     * A copy of this type, made of copies of the types it
+     * is made of, which stays equal to this type no matter
+     * what is later done to this type, or to the types it
+     * is made of, for caches which hold on to the types
+     * of callers who might go on to modify them. Unions
+     * and intersections get a new declaration with copies
+     * of their cases. Returns this type if it is interned,
+     * since interned types can't be modified.
+     */
+    public Type snapshot() {
+        if (internEpoch!=0) {
+            return this;
+        }
+        TypeDeclaration dec = getDeclaration();
+        if (dec instanceof UnionType) {
+            UnionType ut = new UnionType(dec.getUnit());
+            ut.setCaseTypes(snapshot(dec.getCaseTypes()));
+            dec = ut;
+        }
+        else if (dec instanceof IntersectionType) {
+            IntersectionType it =
+                    new IntersectionType(dec.getUnit());
+            it.setSatisfiedTypes(
+                    snapshot(dec.getSatisfiedTypes()));
+            dec = it;
+        }
+        Type copy = new Type();
+        copy.setDeclaration(dec);
+        Type qt = getQualifyingType();
+        if (qt!=null) {
+            copy.setQualifyingType(qt.snapshot());
+        }
+        Map<TypeParameter,Type> args = getTypeArguments();
+        if (!args.isEmpty()) {
+            Map<TypeParameter,Type> sargs =
+                    new TypeParameterMap<Type>(args.size());
+            for (Map.Entry<TypeParameter,Type> e:
+                    args.entrySet()) {
+                Type arg = e.getValue();
+                sargs.put(e.getKey(),
+                        arg==null ? null : arg.snapshot());
+            }
+            copy.setTypeArguments(sargs);
+        }
+        Map<TypeParameter,SiteVariance> overrides =
+                getVarianceOverrides();
+        if (!overrides.isEmpty()) {
+            copy.setVarianceOverrides(
+                    new TypeParameterMap<SiteVariance>
+                        (overrides));
+        }
+        copy.setTypeConstructor(isTypeConstructor());
+        copy.setTypeConstructorParameter(
+                getTypeConstructorParameter());
+        copy.setUnderlyingType(getUnderlyingType());
+        copy.setRaw(isRaw());
+        return copy;
+    }
+
+    /**
+     * Copies of the given types.
+     *
+     * @see Type#snapshot()
+     */
+    public static List<Type> snapshot(List<Type> types) {
+        int size = types.size();
+        List<Type> copies = new ArrayList<Type>(size);
+        for (int i=0; i<size; i++) {
+            Type type = types.get(i);
+            copies.add(type==null ? null : type.snapshot());
+        }
+        return copies;
+    }
+
     @Override
     public int hashCode() {
         return getMemoisedHashCode();
@@ -4359,6 +5150,12 @@ public class Type extends Reference {
             return false;
         }
         Type other = (Type) obj;
+        if (internEpoch!=0 && 
+                internEpoch==other.internEpoch) {
+            //distinct canonical instances of the same
+            //intern table are never equal
+            return false;
+        }
         Type qA = getQualifyingType();
         Type qB = other.getQualifyingType();
         if (qA!=qB && (qA==null || qB==null || !qA.equals(qB))) {
@@ -25,17 +25,21 @@ public class TypeAlias extends TypeDeclaration {
         }
     }
     
+    @Override
+    boolean canMemoiseSupertypeDeclarations() {
+        return true;
+    }
+    
     @Override
     public boolean inherits(TypeDeclaration dec) {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().inherits(dec);
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         return false;
@@ -102,13 +106,12 @@ public class TypeAlias extends TypeDeclaration {
     public boolean isEmptyType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isEmptyType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -120,13 +123,12 @@ public class TypeAlias extends TypeDeclaration {
     public boolean isTupleType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isTupleType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -138,13 +140,12 @@ public class TypeAlias extends TypeDeclaration {
     public boolean isSequentialType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isSequentialType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -156,13 +157,12 @@ public class TypeAlias extends TypeDeclaration {
     public boolean isSequenceType() {
         Type et = getExtendedType();
         if (et!=null) {
-            Type.checkDepth();
-            Type.incDepth();
+            RecursionDepth depth = RecursionDepth.enter();
             try {
                 return et.getDeclaration().isSequenceType();
             }
             finally {
-                Type.decDepth();
+                depth.decrement();
             }
         }
         else {
@@ -1,5 +1,6 @@
 package com.redhat.ceylon.model.typechecker.model;
 
+import static com.redhat.ceylon.model.typechecker.model.ModelUtil.getMatchingCandidates;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.getNativeHeader;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.getSignature;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.getTypeArgumentMap;
@@ -18,8 +19,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import com.redhat.ceylon.model.loader.model.AnnotationTarget;
+import com.redhat.ceylon.model.typechecker.context.TypeCache;
 import com.redhat.ceylon.common.Backends;
 
 public abstract class TypeDeclaration extends Declaration 
@@ -126,6 +129,7 @@ public abstract class TypeDeclaration extends Declaration
     
     public void setExtendedType(Type extendedType) {
         this.extendedType = extendedType;
+        extendedOrSatisfiedTypesChanged();
     }
     
     public List<Type> getSatisfiedTypes() {
@@ -134,6 +138,11 @@ public abstract class TypeDeclaration extends Declaration
     
     public void setSatisfiedTypes(List<Type> satisfiedTypes) {
         this.satisfiedTypes = satisfiedTypes;
+        extendedOrSatisfiedTypesChanged();
+    }
+    
+    private void extendedOrSatisfiedTypesChanged() {
+        supertypesChanged();
     }
     
     public List<Type> getCaseTypes() {
@@ -894,7 +903,9 @@ public abstract class TypeDeclaration extends Declaration
         result.putAll(getMatchingMemberDeclarations(unit, 
                 null, startingWith, proximity));
         //Local declarations always hide inherited declarations, even if non-shared
-        for (Declaration dec: getMembers()) {
+        for (Declaration dec: 
+                getMatchingCandidates(getMembers(), 
+                        startingWith)) {
             if (isResolvable(dec) && 
                     !isOverloadedVersion(dec) ) {
                 if (isNameMatching(startingWith, dec)) {
@@ -935,7 +946,9 @@ public abstract class TypeDeclaration extends Declaration
                                 scope, startingWith, 
                                 proximity+1));
         }
-        for (Declaration member: getMembers()) {
+        for (Declaration member: 
+                getMatchingCandidates(getMembers(), 
+                        startingWith)) {
             if (isResolvable(member) && 
                     !isOverloadedVersion(member) &&
                 (member.isShared() || 
@@ -1052,19 +1065,65 @@ public abstract class TypeDeclaration extends Declaration
         return false;
     }
     
-//    private List<TypeDeclaration> supertypeDeclarations;
+    /**
+     * Incremented whenever the extended or satisfied types
+     * of this declaration change, making every memoised 
+     * set of supertype declarations which depends on them
+     * stale.
+     */
+    private volatile int supertypesVersion;
+    
+    private static final 
+    AtomicIntegerFieldUpdater<TypeDeclaration> 
+    SUPERTYPES_VERSION = 
+            AtomicIntegerFieldUpdater.newUpdater(
+                    TypeDeclaration.class, 
+                    "supertypesVersion");
+    
+    //set once some memoised set of supertype declarations
+    //depends on the supertypes of this declaration, so
+    //that declarations nothing depends on, for example
+    //the intersections formed by type operations, don't
+    //make every memoised set look again
+    private volatile boolean supertypesObserved;
+    
+    /**
+     * The version of the supertypes of this declaration, 
+     * for a memoised set of supertype declarations which
+     * depends on them.
+     */
+    int observeSupertypesVersion() {
+        if (!supertypesObserved) {
+            supertypesObserved = true;
+        }
+        return supertypesVersion;
+    }
+    
+    int getSupertypesVersion() {
+        return supertypesVersion;
+    }
+    
+    void supertypesChanged() {
+        SUPERTYPES_VERSION.incrementAndGet(this);
+        if (supertypesObserved) {
+            TypeCache.supertypesChanged();
+        }
+    }
+    
+    private volatile SupertypeDeclarations supertypeDeclarations;
+    //the ordinal of this declaration in its module, in the 
+    //high bits the epoch of the ordinals it belongs to
+    private volatile long ordinal = -1;
     
     public final List<TypeDeclaration> getSupertypeDeclarations() {
-//        if (TypeCache.isEnabled()) {
-//            if (supertypeDeclarations==null) {
-//                supertypeDeclarations = 
-//                        getSupertypeDeclarationsInternal();
-//            }
-//            return supertypeDeclarations;
-//        }
-//        else {
+        SupertypeDeclarations sds = 
+                getMemoisedSupertypeDeclarations();
+        if (sds!=null) {
+            return sds.list;
+        }
+        else {
             return getSupertypeDeclarationsInternal();
-//        }
+        }
     }
 
     private List<TypeDeclaration> getSupertypeDeclarationsInternal() {
@@ -1077,6 +1136,70 @@ public abstract class TypeDeclaration extends Declaration
         return results;
     }
     
+    /**
+     * The supertype declarations of this declaration,
+     * computed again only when the extended or satisfied
+     * types of a declaration they depend on change, or 
+     * null if they can't be memoised.
+     */
+    SupertypeDeclarations getMemoisedSupertypeDeclarations() {
+        if (!canMemoiseSupertypeDeclarations() || 
+                !TypeCache.isEnabled()) {
+            return null;
+        }
+        SupertypeDeclarations sds = supertypeDeclarations;
+        if (sds==null || !sds.isCurrent()) {
+            //read the stamp before collecting them, so
+            //that a change made meanwhile makes them
+            //stale
+            int stamp = TypeCache.getSupertypesStamp();
+            sds = new SupertypeDeclarations(this,
+                    getSupertypeDeclarationsInternal(), 
+                    stamp);
+            supertypeDeclarations = sds;
+        }
+        return sds;
+    }
+    
+    /**
+     * Is the result of {@link #getSupertypeDeclarations()}
+     * determined only by the extended and satisfied types
+     * of this declaration and its supertypes, so that it 
+     * can be memoised?
+     */
+    boolean canMemoiseSupertypeDeclarations() {
+        return false;
+    }
+    
+    /**
+     * The module which numbers this declaration for the 
+     * purposes of {@link SupertypeDeclarations}, or null
+     * if it doesn't belong to a module.
+     */
+    Module getOrdinalModule() {
+        Unit unit = getUnit();
+        if (unit==null) {
+            return null;
+        }
+        Package pkg = unit.getPackage();
+        return pkg==null ? null : pkg.getModule();
+    }
+    
+    /**
+     * The ordinal of this declaration in the given cache,
+     * which belongs to its module.
+     */
+    int getOrdinal(TypeCache cache) {
+        int epoch = cache.getOrdinalsEpoch();
+        long result = ordinal;
+        if (result<0 || (int) (result>>>32)!=epoch) {
+            int o = cache.getOrdinal(this);
+            ordinal = (long) epoch<<32 | o;
+            return o;
+        }
+        return (int) result;
+    }
+    
     abstract void collectSupertypeDeclarations(
             List<TypeDeclaration> results);
     
@@ -1087,7 +1210,6 @@ public abstract class TypeDeclaration extends Declaration
      */
     public void clearProducedTypeCache() {
         // do nothing, work in subclasses
-//        supertypeDeclarations = null;
     }
 
     public boolean isAnything() {
@@ -1142,6 +1264,14 @@ public abstract class TypeDeclaration extends Declaration
         return false;
     }
     
+    boolean isTrueValue() {
+        return false;
+    }
+    
+    boolean isFalseValue() {
+        return false;
+    }
+    
     public boolean isEntry() {
         return false;
     }
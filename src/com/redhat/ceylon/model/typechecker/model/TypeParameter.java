@@ -20,6 +20,9 @@ public class TypeParameter extends TypeDeclaration {
     private List<Declaration> members = new ArrayList<Declaration>(0);
     private boolean captured;
     private List<TypeParameter> typeParameters = emptyList();
+    //set once some memoised summary of a type depends
+    //on the variance of this type parameter
+    private volatile boolean summarized;
 
     @Override
     public List<Declaration> getMembers() {
@@ -41,6 +44,7 @@ public class TypeParameter extends TypeDeclaration {
 
     public void setCovariant(boolean covariant) {
         this.covariant = covariant;
+        varianceChanged();
     }
 
     public boolean isContravariant() {
@@ -49,6 +53,7 @@ public class TypeParameter extends TypeDeclaration {
 
     public void setContravariant(boolean contravariant) {
         this.contravariant = contravariant;
+        varianceChanged();
     }
     
     public boolean isTypeConstructor() {
@@ -57,6 +62,24 @@ public class TypeParameter extends TypeDeclaration {
     
     public void setTypeConstructor(boolean typeConstructor) {
         this.typeConstructor = typeConstructor;
+        varianceChanged();
+    }
+    
+    /**
+     * Record that a memoised summary of a type depends on
+     * the variance of this type parameter, and on whether
+     * it is a type constructor.
+     */
+    void summarized() {
+        if (!summarized) {
+            summarized = true;
+        }
+    }
+    
+    private void varianceChanged() {
+        if (summarized) {
+            Type.summariesChanged();
+        }
     }
     
     @Override
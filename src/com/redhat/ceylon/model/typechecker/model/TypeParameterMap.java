@@ -0,0 +1,291 @@
+package com.redhat.ceylon.model.typechecker.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from type parameters to type arguments or to
+ * use-site variances, which stores its keys and values
+ * positionally, in a pair of arrays, in the order they
+ * were added. For a type formed from a list of type
+ * arguments, that's the order of the type parameters of
+ * the generic declaration.
+ *
+ * A generic declaration rarely has more than two or
+ * three type parameters, so it's much faster to scan a
+ * short array than to hash a type parameter, since
+ * {@link Declaration#hashCode()} must hash the whole
+ * chain of containing scopes. A lookup first looks for
+ * the given type parameter by identity, and only falls
+ * back to {@link Declaration#equals(Object)} for type
+ * parameters with the same name.
+ *
+ * @see Reference#getTypeArguments()
+ * @see Type#getVarianceOverrides()
+ */
+public final class TypeParameterMap<V>
+        extends AbstractMap<TypeParameter,V> {
+
+    private TypeParameter[] keys;
+    private Object[] values;
+    private int size;
+
+    public TypeParameterMap() {
+        this(2);
+    }
+
+    public TypeParameterMap(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        keys = new TypeParameter[capacity];
+        values = new Object[capacity];
+    }
+
+    public TypeParameterMap(
+            Map<TypeParameter,? extends V> map) {
+        this(map.size());
+        putAll(map);
+    }
+
+    /**
+     * The position of the given type parameter, or -1.
+     */
+    private int indexOf(Object key) {
+        TypeParameter[] keys = this.keys;
+        for (int i=0; i<size; i++) {
+            if (keys[i]==key) {
+                return i;
+            }
+        }
+        if (key instanceof TypeParameter) {
+            TypeParameter tp = (TypeParameter) key;
+            String name = tp.getName();
+            for (int i=0; i<size; i++) {
+                TypeParameter k = keys[i];
+                if (k!=null) {
+                    String kn = k.getName();
+                    if ((kn==name ||
+                            kn!=null && kn.equals(name)) &&
+                            k.equals(tp)) {
+                        return i;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The type parameter at the given position.
+     */
+    public TypeParameter getKey(int index) {
+        if (index>=size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return keys[index];
+    }
+
+    /**
+     * The value at the given position.
+     */
+    @SuppressWarnings("unchecked")
+    public V getValue(int index) {
+        if (index>=size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return (V) values[index];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i<0 ? null : (V) values[i];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key)>=0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(TypeParameter key, V value) {
+        int i = indexOf(key);
+        if (i>=0) {
+            V result = (V) values[i];
+            values[i] = value;
+            return result;
+        }
+        if (size==keys.length) {
+            keys = Arrays.copyOf(keys, size*2);
+            values = Arrays.copyOf(values, size*2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void putAll(Map<? extends TypeParameter, ? extends V> map) {
+        if (map instanceof TypeParameterMap) {
+            TypeParameterMap<? extends V> tpm =
+                    (TypeParameterMap<? extends V>) map;
+            for (int i=0; i<tpm.size; i++) {
+                put(tpm.keys[i], (V) tpm.values[i]);
+            }
+        }
+        else {
+            super.putAll(map);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i<0) {
+            return null;
+        }
+        V result = getValue(i);
+        removeAt(i);
+        return result;
+    }
+
+    private void removeAt(int i) {
+        int moved = size-i-1;
+        System.arraycopy(keys, i+1, keys, i, moved);
+        System.arraycopy(values, i+1, values, i, moved);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size==0;
+    }
+
+    @Override
+    public Set<Map.Entry<TypeParameter,V>> entrySet() {
+        return new AbstractSet<Map.Entry<TypeParameter,V>>() {
+            @Override
+            public Iterator<Map.Entry<TypeParameter,V>> iterator() {
+                return new Entries();
+            }
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private final class Entries
+            implements Iterator<Map.Entry<TypeParameter,V>> {
+
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next<size;
+        }
+
+        @Override
+        public Map.Entry<TypeParameter,V> next() {
+            if (next>=size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new Entry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last<0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+
+    }
+
+    private final class Entry
+            implements Map.Entry<TypeParameter,V> {
+
+        private final int index;
+
+        Entry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public TypeParameter getKey() {
+            return keys[index];
+        }
+
+        @Override
+        public V getValue() {
+            return TypeParameterMap.this.getValue(index);
+        }
+
+        @Override
+        public V setValue(V value) {
+            V result = getValue();
+            values[index] = value;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (that instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) that;
+                Object key = getKey();
+                Object value = getValue();
+                return (key==null ?
+                            e.getKey()==null :
+                            key.equals(e.getKey())) &&
+                        (value==null ?
+                            e.getValue()==null :
+                            value.equals(e.getValue()));
+            }
+            else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            Object key = getKey();
+            Object value = getValue();
+            return (key==null ? 0 : key.hashCode()) ^
+                    (value==null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+
+    }
+
+}
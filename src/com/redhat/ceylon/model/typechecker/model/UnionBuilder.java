@@ -0,0 +1,249 @@
+package com.redhat.ceylon.model.typechecker.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates the cases of a union type, eliminating
+ * duplicates exactly like
+ * {@link ModelUtil#addToUnion(List, Type)}, but without
+ * comparing every new case to every existing case. The
+ * cases are indexed by their declaration and by the
+ * declarations they inherit, so that a new case is only
+ * compared to the existing cases which it could possibly
+ * be a subtype or supertype of. For the union of the
+ * cases of an enumerated type, that's usually none of
+ * them, and forming the union is linear instead of
+ * quadratic in the number of cases.
+ *
+ * Removed cases are marked, rather than removed from the
+ * list of cases, so that positions in the index remain
+ * valid.
+ */
+final class UnionBuilder {
+
+    /**
+     * Unions with fewer cases than this are just formed
+     * by {@link ModelUtil#addToUnion(List, Type)}.
+     */
+    static final int THRESHOLD = 16;
+
+    private final List<Type> cases;
+    private boolean[] removed;
+    private int size;
+
+    //the positions of the nominal cases, by declaration
+    private final Map<TypeDeclaration,Positions> byDeclaration =
+            new HashMap<TypeDeclaration,Positions>();
+    //the positions of the nominal cases, by each
+    //declaration they inherit
+    private final Map<TypeDeclaration,Positions> bySupertype =
+            new HashMap<TypeDeclaration,Positions>();
+    //the positions of the cases which aren't nominal,
+    //which we compare to every new case
+    private final Positions others = new Positions();
+
+    /**
+     * @param list the cases of the union so far
+     */
+    UnionBuilder(List<Type> list) {
+        int initial = list.size();
+        cases = new ArrayList<Type>(initial+THRESHOLD);
+        removed = new boolean[initial+THRESHOLD];
+        for (int i=0; i<initial; i++) {
+            append(list.get(i));
+        }
+    }
+
+    /**
+     * Add a case to the union, unless it's a subtype of an
+     * existing case, removing any existing cases which are
+     * subtypes of it.
+     */
+    void add(Type pt) {
+        if (pt==null ||
+                size>0 &&
+                pt.isExactlyNothing()) {
+            return;
+        }
+        else if (pt.isAnything()) {
+            clear();
+            append(pt);
+        }
+        else if (pt.isUnion()) {
+            List<Type> caseTypes =
+                    pt.getCaseTypes();
+            for ( int i=0, size=caseTypes.size();
+                    i<size; i++ ) {
+                Type t = caseTypes.get(i);
+                add(t.substitute(pt));
+            }
+        }
+        else if (pt.isWellDefined()) {
+            int[] candidates = candidates(pt);
+            boolean add=true;
+            for (int i: candidates) {
+                if (removed[i]) {
+                    continue;
+                }
+                Type t = cases.get(i);
+                if (pt.isSubtypeOf(t)) {
+                    add=false;
+                    break;
+                }
+                else if (pt.isSupertypeOf(t)) {
+                    removed[i] = true;
+                    size--;
+                }
+            }
+            if (add) {
+                append(pt);
+            }
+        }
+    }
+
+    /**
+     * Replace the contents of the given list with the
+     * cases of the union, in the order they were added.
+     */
+    void copyTo(List<Type> list) {
+        list.clear();
+        for (int i=0, l=cases.size(); i<l; i++) {
+            if (!removed[i]) {
+                list.add(cases.get(i));
+            }
+        }
+    }
+
+    /**
+     * The positions, in ascending order, of the cases
+     * which might be subtypes or supertypes of the given
+     * type.
+     */
+    private int[] candidates(Type pt) {
+        if (!isNominal(pt)) {
+            //compare it to every case
+            int[] result = new int[cases.size()];
+            for (int i=0; i<result.length; i++) {
+                result[i] = i;
+            }
+            return result;
+        }
+        TypeDeclaration dec = pt.getDeclaration();
+        Positions result = new Positions();
+        result.addAll(others);
+        //cases which might be subtypes
+        result.addAll(bySupertype.get(dec));
+        //cases which might be supertypes
+        result.addAll(byDeclaration.get(dec));
+        List<TypeDeclaration> supertypes =
+                dec.getSupertypeDeclarations();
+        for (int i=0, l=supertypes.size(); i<l; i++) {
+            result.addAll(byDeclaration.get(supertypes.get(i)));
+        }
+        return result.sorted();
+    }
+
+    private void append(Type t) {
+        int i = cases.size();
+        cases.add(t);
+        if (i==removed.length) {
+            removed = Arrays.copyOf(removed, i*2);
+        }
+        size++;
+        if (isNominal(t)) {
+            TypeDeclaration dec = t.getDeclaration();
+            index(byDeclaration, dec, i);
+            index(bySupertype, dec, i);
+            List<TypeDeclaration> supertypes =
+                    dec.getSupertypeDeclarations();
+            for (int j=0, l=supertypes.size(); j<l; j++) {
+                TypeDeclaration std = supertypes.get(j);
+                //a nominal type is never Anything, Object,
+                //or Null, so there's no need to index them
+                if (!std.isAnything() &&
+                        !std.isObject() &&
+                        !std.isNull()) {
+                    index(bySupertype, std, i);
+                }
+            }
+        }
+        else {
+            others.add(i);
+        }
+    }
+
+    private void clear() {
+        Arrays.fill(removed, 0, cases.size(), true);
+        size = 0;
+    }
+
+    private static void index(Map<TypeDeclaration,Positions> map,
+            TypeDeclaration dec, int i) {
+        Positions positions = map.get(dec);
+        if (positions==null) {
+            positions = new Positions();
+            map.put(dec, positions);
+        }
+        positions.add(i);
+    }
+
+    /**
+     * Is the given type a class or interface type which
+     * can only be a subtype of a class or interface type
+     * whose declaration it inherits, and can only be a
+     * supertype of a class or interface type whose
+     * declaration inherits its declaration? That's true
+     * unless it's an alias, a type constructor, or one of
+     * the types which subtyping treats specially.
+     */
+    static boolean isNominal(Type type) {
+        if (!type.isClassOrInterface() ||
+                type.isTypeConstructor()) {
+            return false;
+        }
+        TypeDeclaration dec = type.getDeclaration();
+        return !dec.isAlias() &&
+                !dec.isAnything() &&
+                !dec.isObject() &&
+                !dec.isNull();
+    }
+
+    /**
+     * A growable list of positions of cases.
+     */
+    private static final class Positions {
+        int[] items = new int[4];
+        int size;
+        void add(int i) {
+            if (size==items.length) {
+                items = Arrays.copyOf(items, size*2);
+            }
+            items[size++] = i;
+        }
+        void addAll(Positions positions) {
+            if (positions!=null) {
+                for (int i=0; i<positions.size; i++) {
+                    add(positions.items[i]);
+                }
+            }
+        }
+        int[] sorted() {
+            int[] result = Arrays.copyOf(items, size);
+            Arrays.sort(result);
+            //remove duplicates
+            int count = 0;
+            for (int i=0; i<result.length; i++) {
+                if (count==0 || result[count-1]!=result[i]) {
+                    result[count++] = result[i];
+                }
+            }
+            return count==result.length ?
+                    result : Arrays.copyOf(result, count);
+        }
+    }
+
+}
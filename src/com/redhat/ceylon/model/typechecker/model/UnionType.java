@@ -65,6 +65,15 @@ public class UnionType extends TypeDeclaration {
             return super.getType();
         }
     }
+    
+    /**
+     * The type of this union, when its cases are already 
+     * known to be well-defined, and there are at least two 
+     * of them, avoiding iteration of the cases.
+     */
+    Type getTypeOfWellDefinedCases() {
+        return super.getType();
+    }
 
     @Override
     public Map<String, DeclarationWithProximity> 
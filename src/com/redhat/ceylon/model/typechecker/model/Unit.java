@@ -15,6 +15,7 @@ import static com.redhat.ceylon.model.typechecker.model.ModelUtil.unionType;
 import static com.redhat.ceylon.model.typechecker.model.Module.LANGUAGE_MODULE_NAME;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -30,7 +31,7 @@ import com.redhat.ceylon.model.typechecker.context.TypeCache;
 public class Unit {
 
     private Package pkg;
-    private List<Import> imports = new ArrayList<Import>();
+    private Imports imports = new Imports();
     private List<Declaration> declarations = new ArrayList<Declaration>();
     private String filename;
     private List<ImportList> importLists = new ArrayList<ImportList>();
@@ -42,6 +43,102 @@ public class Unit {
     public List<Import> getImports() {
         return imports;
     }
+    
+    /**
+     * The list of imports of a unit, which counts its own
+     * modifications, along with changes to the imports it
+     * contains, so that we know when to rebuild the index 
+     * of imports.
+     */
+    static final class Imports extends ArrayList<Import> {
+        private static final long serialVersionUID = 1L;
+        private int importModifications;
+        @Override
+        public boolean add(Import element) {
+            element.setOwner(this);
+            return super.add(element);
+        }
+        @Override
+        public void add(int index, Import element) {
+            element.setOwner(this);
+            super.add(index, element);
+        }
+        @Override
+        public boolean addAll(Collection<? extends Import> elements) {
+            for (Import element: elements) {
+                element.setOwner(this);
+            }
+            return super.addAll(elements);
+        }
+        @Override
+        public boolean addAll(int index, 
+                Collection<? extends Import> elements) {
+            for (Import element: elements) {
+                element.setOwner(this);
+            }
+            return super.addAll(index, elements);
+        }
+        @Override
+        public Import set(int index, Import element) {
+            element.setOwner(this);
+            Import result = super.set(index, element);
+            //set() isn't a structural modification
+            //of an ArrayList, but it is for us
+            modCount++;
+            return result;
+        }
+        void importChanged() {
+            importModifications++;
+        }
+        /**
+         * Changes whenever the list is modified, or an 
+         * import in the list is modified. Both counts only 
+         * ever increase, so neither does their sum.
+         */
+        int getVersion() {
+            return modCount + importModifications;
+        }
+    }
+    
+    /**
+     * Changes whenever an import is added to or removed
+     * from this unit, or whenever one of its imports is 
+     * given a new alias or declaration, or is found to be 
+     * ambiguous, so that anything which depends on the 
+     * imports of the unit knows when to recompute it.
+     */
+    public int getImportsVersion() {
+        return imports.getVersion();
+    }
+    
+    private ImportIndex importIndex;
+    
+    /**
+     * The index of the imports, or null if there are too
+     * few imports to be worth indexing.
+     */
+    private ImportIndex getImportIndex() {
+        if (imports.size()<ImportIndex.THRESHOLD) {
+            return null;
+        }
+        int version = imports.getVersion();
+        ImportIndex index = importIndex;
+        if (index==null || !index.isCurrent(version)) {
+            index = new ImportIndex(imports, version);
+            importIndex = index;
+        }
+        return index;
+    }
+    
+    /**
+     * The imports which might have the given alias. The 
+     * caller must still check the alias of each import.
+     */
+    private List<Import> getImportsWithAlias(String alias) {
+        ImportIndex index = getImportIndex();
+        return index==null ? imports : 
+            index.getImportsWithAlias(alias);
+    }
 
     public List<ImportList> getImportLists() {
         return importLists;
@@ -67,6 +164,10 @@ public class Unit {
     }
 
     public List<Declaration> getDeclarations() {
+        List<Declaration> frozen = frozenDeclarations;
+        if (frozen!=null) {
+            return frozen;
+        }
         synchronized (declarations) {
             return new ArrayList<Declaration>(declarations);
         }
@@ -74,9 +175,40 @@ public class Unit {
     
     public void addDeclaration(Declaration declaration) {
         synchronized (declarations) {
+            if (frozenDeclarations!=null) {
+                throw new UnsupportedOperationException(
+                        "unit is frozen: " + filename);
+            }
             declarations.add(declaration);
         }
     }
+    
+    //once the unit is frozen, an immutable 
+    //snapshot of its declarations, which may be 
+    //read without locking
+    private volatile List<Declaration> frozenDeclarations;
+    
+    /**
+     * Forbid the addition of any further declarations 
+     * to this unit, so that its declarations may be
+     * read without locking or copying.
+     * 
+     * @see Package#freeze()
+     */
+    public void freeze() {
+        synchronized (declarations) {
+            if (frozenDeclarations==null) {
+                frozenDeclarations = 
+                        Collections.unmodifiableList(
+                                new ArrayList<Declaration>
+                                    (declarations));
+            }
+        }
+    }
+    
+    public boolean isFrozen() {
+        return frozenDeclarations!=null;
+    }
 
     public String getFilename() {
         return filename;
@@ -108,7 +240,7 @@ public class Unit {
     }
 
     public Import getImport(String name) {
-        for (Import i: getImports()) {
+        for (Import i: getImportsWithAlias(name)) {
             if (!i.isAmbiguous() &&
                     i.getTypeDeclaration()==null &&
                     i.getAlias().equals(name)) {
@@ -123,7 +255,10 @@ public class Unit {
     }
 
     public String getAliasedName(Declaration dec, String defaultValue) {
-        for (Import i: getImports()) {
+        ImportIndex index = getImportIndex();
+        List<Import> candidates = index==null ? imports : 
+            index.getImportsOfDeclarationsNamed(dec.getName());
+        for (Import i: candidates) {
             if (!i.isAmbiguous() &&
                     i.getDeclaration().equals(getAbstraction(dec))) {
                 return i.getAlias();
@@ -149,7 +284,7 @@ public class Unit {
      */
     public Declaration getImportedDeclaration(String name, 
             List<Type> signature, boolean ellipsis) {
-        for (Import i: getImports()) {
+        for (Import i: getImportsWithAlias(name)) {
             if (!i.isAmbiguous() && 
                     i.getAlias().equals(name)) {
                 //in case of an overloaded member, this will
@@ -187,7 +322,7 @@ public class Unit {
     public Declaration getImportedDeclaration(TypeDeclaration td, 
             String name, List<Type> signature, 
             boolean ellipsis) {
-        for (Import i: getImports()) {
+        for (Import i: getImportsWithAlias(name)) {
             TypeDeclaration itd = i.getTypeDeclaration();
             if (itd!=null && itd.equals(td) && 
                     !i.isAmbiguous() &&
@@ -266,7 +401,6 @@ public class Unit {
     }
     
     private Module languageModule;
-    private Package languagePackage;
 
     /**
      * Search for a declaration in the language module. 
@@ -281,18 +415,8 @@ public class Unit {
             if ("Nothing".equals(name)) {
                 return getNothingDeclaration();
             }
-            if (languagePackage==null) {
-                languagePackage = 
-                        languageModule.getPackage(LANGUAGE_MODULE_NAME);
-            }
-            if (languagePackage != null) {
-                Declaration d = 
-                        languagePackage.getMember(name, 
-                                null, false);
-                if (d != null && d.isShared()) {
-                    return d;
-                }
-            }
+            return languageModule.getLanguageModuleSymbols()
+                    .getDeclaration(LANGUAGE_MODULE_NAME, name);
         }
         return null;
     }
@@ -305,74 +429,40 @@ public class Unit {
         }
         return languageModule;
     }
+    
+    private Declaration getLanguageModuleDeclaration(
+            String packageName, String name) {
+        Module languageModule = getLanguageModule();
+        if (languageModule!=null && 
+                languageModule.isAvailable()) {
+            return languageModule.getLanguageModuleSymbols()
+                    .getDeclaration(packageName, name);
+        }
+        return null;
+    }
 
     /**
      * Search for a declaration in {@code ceylon.language.meta.model} 
      */
     public Declaration getLanguageModuleModelDeclaration(String name) {
-        Module languageModule = 
-                getPackage().getModule()
-                    .getLanguageModule();
-        if (languageModule!=null && 
-                languageModule.isAvailable()) {
-            Package languageScope = 
-                    languageModule.getPackage("ceylon.language.meta.model");
-            if (languageScope!=null) {
-                Declaration d = 
-                        languageScope.getMember(name, 
-                                null, false);
-                if (d!=null && d.isShared()) {
-                    return d;
-                }
-            }
-        }
-        return null;
+        return getLanguageModuleDeclaration(
+                "ceylon.language.meta.model", name);
     }
     
     /**
      * Search for a declaration in {@code ceylon.language.meta.declaration} 
      */
     public Declaration getLanguageModuleDeclarationDeclaration(String name) {
-        Module languageModule = 
-                getPackage().getModule()
-                    .getLanguageModule();
-        if (languageModule!=null && 
-                languageModule.isAvailable()) {
-            Package languageScope = 
-                    languageModule.getPackage("ceylon.language.meta.declaration");
-            if (languageScope!=null) {
-                Declaration d = 
-                        languageScope.getMember(name, 
-                                null, false);
-                if (d!=null && d.isShared()) {
-                    return d;
-                }
-            }
-        }
-        return null;
+        return getLanguageModuleDeclaration(
+                "ceylon.language.meta.declaration", name);
     }
     
     /**
      * Search for a declaration in {@code ceylon.language.serialization} 
      */
     public Declaration getLanguageModuleSerializationDeclaration(String name) {
-        Module languageModule = 
-                getPackage().getModule()
-                    .getLanguageModule();
-        if (languageModule!=null && 
-                languageModule.isAvailable()) {
-            Package languageScope = 
-                    languageModule.getPackage("ceylon.language.serialization");
-            if (languageScope!=null) {
-                Declaration d = 
-                        languageScope.getMember(name, 
-                                null, false);
-                if (d != null && d.isShared()) {
-                    return d;
-                }
-            }
-        }
-        return null;
+        return getLanguageModuleDeclaration(
+                "ceylon.language.serialization", name);
     }
     
     public Interface getCorrespondenceDeclaration() {
@@ -659,9 +749,12 @@ public class Unit {
             int firstDefaulted,
             Type result, Type union) {
         int last = elemTypes.size()-1;
+        TupleElementUnion elements = 
+                new TupleElementUnion(union, this);
         for (int i=last; i>=0; i--) {
             Type elemType = elemTypes.get(i);
-            union = unionType(union, elemType, this);
+            elements.add(elemType);
+            union = elements.getType();
             if (variadic && i==last) {
                 result = atLeastOne ? 
                         getSequenceType(elemType) : 
@@ -1316,16 +1409,12 @@ public class Unit {
                     caseA.getDeclaration();
             TypeDeclaration caseBDecl = 
                     caseB.getDeclaration();
-            String caseAName = 
-                    caseADecl.getQualifiedNameString();
-            String caseBName = 
-                    caseBDecl.getQualifiedNameString();
-            if (caseAName.equals("ceylon.language::Empty") && 
-                caseBName.equals("ceylon.language::Tuple")) {
+            if (caseADecl.isEmpty() && 
+                caseBDecl.isTuple()) {
                 return getSimpleTupleElementTypes(caseB, count);
             }
-            if (caseBName.equals("ceylon.language::Empty") && 
-                caseAName.equals("ceylon.language::Tuple")) {
+            if (caseBDecl.isEmpty() && 
+                caseADecl.isTuple()) {
                 return getSimpleTupleElementTypes(caseA, count);
             }
             return null;
@@ -1334,10 +1423,8 @@ public class Unit {
         if (!(args.isClassOrInterface())) {
             return null;
         }
-        String name = 
-                args.getDeclaration()
-                    .getQualifiedNameString();
-        if (name.equals("ceylon.language::Tuple")){
+        TypeDeclaration dec = args.getDeclaration();
+        if (dec.isTuple()){
             List<Type> tal = 
                     args.getTypeArgumentList();
             Type first = tal.get(1);
@@ -1349,7 +1436,7 @@ public class Unit {
             ret.set(count, first);
             return ret;
         }
-        if (name.equals("ceylon.language::Empty")){
+        if (dec.isEmpty()){
             ArrayList<Type> ret = 
                     new ArrayList<Type>(count);
             for (int i=0;i<count;i++) {
@@ -1357,9 +1444,9 @@ public class Unit {
             }
             return ret;
         }
-        if (name.equals("ceylon.language::Sequential")
-                || name.equals("ceylon.language::Sequence")
-                || name.equals("ceylon.language::Range")) {
+        if (dec.isSequential()
+                || dec.isSequence()
+                || dec.isRange()) {
             ArrayList<Type> ret = 
                     new ArrayList<Type>(count+1);
             for (int i=0;i<count;i++) {
@@ -1438,16 +1525,12 @@ public class Unit {
                     caseA.getDeclaration();
             TypeDeclaration caseBDecl = 
                     caseB.getDeclaration();
-            String caseAName = 
-                    caseADecl.getQualifiedNameString();
-            String caseBName = 
-                    caseBDecl.getQualifiedNameString();
-            if (caseAName.equals("ceylon.language::Empty") && 
-                caseBName.equals("ceylon.language::Tuple")) {
+            if (caseADecl.isEmpty() && 
+                caseBDecl.isTuple()) {
                 return isSimpleTupleLengthUnbounded(caseB);
             }
-            if (caseBName.equals("ceylon.language::Empty") && 
-                caseAName.equals("ceylon.language::Tuple")) {
+            if (caseBDecl.isEmpty() && 
+                caseADecl.isTuple()) {
                 return isSimpleTupleLengthUnbounded(caseA);
             }
             return null;
@@ -1456,22 +1539,20 @@ public class Unit {
         if (!(args.isClassOrInterface())) {
             return null;
         }
-        String name = 
-                args.getDeclaration()
-                    .getQualifiedNameString();
-        if (name.equals("ceylon.language::Tuple")) {
+        TypeDeclaration dec = args.getDeclaration();
+        if (dec.isTuple()) {
             Type rest = 
                     args.getTypeArgumentList().get(2);
             return isSimpleTupleLengthUnbounded(rest);
         }
-        if (name.equals("ceylon.language::Empty")) {
+        if (dec.isEmpty()) {
             return false;
         }
-        if (name.equals("ceylon.language::Range")) {
+        if (dec.isRange()) {
             return true;
         }
-        if (name.equals("ceylon.language::Sequential") || 
-            name.equals("ceylon.language::Sequence")) {
+        if (dec.isSequential() || 
+            dec.isSequence()) {
             return true;
         }
         return null;
@@ -1547,16 +1628,12 @@ public class Unit {
                     caseA.getDeclaration();
             TypeDeclaration caseBDecl = 
                     caseB.getDeclaration();
-            String caseAName = 
-                    caseADecl.getQualifiedNameString();
-            String caseBName = 
-                    caseBDecl.getQualifiedNameString();
-            if (caseAName.equals("ceylon.language::Empty") && 
-                caseBName.equals("ceylon.language::Tuple")) {
+            if (caseADecl.isEmpty() && 
+                caseBDecl.isTuple()) {
                 return isSimpleTupleVariantAtLeastOne(caseB);
             }
-            if (caseBName.equals("ceylon.language::Empty") && 
-                caseAName.equals("ceylon.language::Tuple")) {
+            if (caseBDecl.isEmpty() && 
+                caseADecl.isTuple()) {
                 return isSimpleTupleVariantAtLeastOne(caseA);
             }
             return null;
@@ -1565,24 +1642,22 @@ public class Unit {
         if (!(args.isClassOrInterface())) {
             return null;
         }
-        String name = 
-                args.getDeclaration()
-                    .getQualifiedNameString();
-        if (name.equals("ceylon.language::Tuple")) {
+        TypeDeclaration dec = args.getDeclaration();
+        if (dec.isTuple()) {
             Type rest = 
                     args.getTypeArgumentList().get(2);
             return isSimpleTupleVariantAtLeastOne(rest);
         }
-        if (name.equals("ceylon.language::Empty")) {
+        if (dec.isEmpty()) {
             return false;
         }
-        if (name.equals("ceylon.language::Range")) {
+        if (dec.isRange()) {
             return true;
         }
-        if (name.equals("ceylon.language::Sequential")) {
+        if (dec.isSequential()) {
             return false;
         }
-        if (name.equals("ceylon.language::Sequence")) {
+        if (dec.isSequence()) {
             return true;
         }
         return null;
@@ -1658,16 +1733,12 @@ public class Unit {
                     caseA.getDeclaration();
             TypeDeclaration caseBDecl = 
                     caseB.getDeclaration();
-            String caseAName = 
-                    caseADecl.getQualifiedNameString();
-            String caseBName = 
-                    caseBDecl.getQualifiedNameString();
-            if (caseAName.equals("ceylon.language::Empty") && 
-                caseBName.equals("ceylon.language::Tuple")) {
+            if (caseADecl.isEmpty() && 
+                caseBDecl.isTuple()) {
                 return 0;
             }
-            if (caseBName.equals("ceylon.language::Empty") && 
-                caseAName.equals("ceylon.language::Tuple")) {
+            if (caseBDecl.isEmpty() && 
+                caseADecl.isTuple()) {
                 return 0;
             }
             return -1;
@@ -1676,25 +1747,23 @@ public class Unit {
         if (!(args.isClassOrInterface())) {
             return -1;
         }
-        String name = 
-                args.getDeclaration()
-                    .getQualifiedNameString();
-        if (name.equals("ceylon.language::Tuple")) {
+        TypeDeclaration dec = args.getDeclaration();
+        if (dec.isTuple()) {
             Type rest = 
                     args.getTypeArgumentList().get(2);
             int ret = getSimpleTupleMinimumLength(rest);
             return ret == -1 ? -1 : ret + 1;
         }
-        if (name.equals("ceylon.language::Empty")) {
+        if (dec.isEmpty()) {
             return 0;
         }
-        if (name.equals("ceylon.language::Range")) {
+        if (dec.isRange()) {
             return 1;
         }
-        if (name.equals("ceylon.language::Sequential")) {
+        if (dec.isSequential()) {
             return 0;
         }
-        if (name.equals("ceylon.language::Sequence")) {
+        if (dec.isSequence()) {
             return 1;
         }
         return -1;
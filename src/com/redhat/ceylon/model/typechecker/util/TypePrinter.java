@@ -3,8 +3,10 @@ package com.redhat.ceylon.model.typechecker.util;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.isElementOfUnion;
 import static com.redhat.ceylon.model.typechecker.model.ModelUtil.union;
 
+import java.io.IOException;
 import java.util.List;
 
+import com.redhat.ceylon.model.typechecker.context.TypeCache;
 import com.redhat.ceylon.model.typechecker.model.Class;
 import com.redhat.ceylon.model.typechecker.model.Declaration;
 import com.redhat.ceylon.model.typechecker.model.Interface;
@@ -34,6 +36,9 @@ public class TypePrinter {
     private final boolean printQualifier;
     private final boolean printFullyQualified;
     private final boolean escapeLowercased;
+    //identifies the configuration of the printer in the
+    //cache of printed types
+    private final int format;
     
     public TypePrinter() {
         this(false, false, false, false, false, false, false);
@@ -69,6 +74,14 @@ public class TypePrinter {
         this.escapeLowercased = escapeLowercased;
         this.printFullyQualified = printFullyQualified;
         this.printQualifier = printQualifier;
+        this.format = 
+                (printAbbreviated ? 1 : 0) |
+                (printTypeParameters ? 2 : 0) |
+                (printTypeParameterDetail ? 4 : 0) |
+                (printQualifyingType ? 8 : 0) |
+                (escapeLowercased ? 16 : 0) |
+                (printFullyQualified ? 32 : 0) |
+                (printQualifier ? 64 : 0);
     }
     
     protected boolean printAbbreviated() {
@@ -107,59 +120,149 @@ public class TypePrinter {
         return "&";
     }
 
+    /**
+     * Print the given type, in the context of the given 
+     * compilation unit, whose imports determine the names
+     * of declarations. The result is cached, as long as 
+     * the type may be cached, and this printer isn't an 
+     * instance of a subclass, which might print types 
+     * differently.
+     */
     public String print(Type pt, Unit unit) {
         if (pt==null) {
             return "unknown";
         }
+        TypeCache cache = getCache(pt);
+        if (cache!=null) {
+            String cached = cache.getPrinted(format, pt, unit);
+            if (cached!=null) {
+                return cached;
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        try {
+            append(result, pt, unit);
+        }
+        catch (IOException e) {
+            //can't happen with a StringBuilder
+            throw new RuntimeException(e);
+        }
+        String string = result.toString();
+        if (cache!=null) {
+            cache.putPrinted(format, pt, unit, string);
+        }
+        return string;
+    }
+    
+    /**
+     * Print the given type to the given {@link Appendable},
+     * in the context of the given compilation unit, without 
+     * first building a string, unless the result is cached,
+     * or this printer is an instance of a subclass, which
+     * might override {@link #print(Type, Unit)}.
+     */
+    public void print(Type pt, Unit unit, Appendable out) 
+            throws IOException {
+        if (pt!=null && 
+                getClass()==TypePrinter.class && 
+                pt.getCache()==null) {
+            append(out, pt, unit);
+        }
+        else {
+            out.append(print(pt, unit));
+        }
+    }
+    
+    private TypeCache getCache(Type pt) {
+        return getClass()==TypePrinter.class ? 
+                pt.getCache() : null;
+    }
+    
+    /**
+     * Print a type which occurs in the type being printed.
+     * It goes through {@link #print(Type, Unit, Appendable)},
+     * so that a subclass which prints types differently 
+     * prints it too.
+     */
+    private void appendNested(Appendable out, Type pt, 
+            Unit unit) 
+            throws IOException {
+        if (getClass()==TypePrinter.class) {
+            append(out, pt, unit);
+        }
+        else {
+            print(pt, unit, out);
+        }
+    }
+    
+    private void append(Appendable out, Type pt, Unit unit) 
+            throws IOException {
+        if (pt==null) {
+            out.append("unknown");
+        }
         else {
             if (printAbbreviated() && !pt.isTypeAlias()) {
                 //TODO: we're going to have to fix this!
                 Unit u = pt.getDeclaration().getUnit();
                 if (abbreviateOptional(pt)) {
                     Type dt = pt.eliminateNull();
-                    String dtn = print(dt, unit);
                     if (isPrimitiveAbbreviatedType(dt)) {
-                        return dtn + "?";
+                        appendNested(out, dt, unit);
+                        out.append("?");
                     }
                     else {
-                        return lt() + dtn + gt() + "?";
+                        out.append(lt());
+                        appendNested(out, dt, unit);
+                        out.append(gt()).append("?");
                     }
+                    return;
                 }
                 if (abbreviateEmpty(pt)) {
-                    return "[]";
+                    out.append("[]");
+                    return;
                 }
                 if (abbreviateHomoTuple(pt)) {
                     Type et = u.getSequentialElementType(pt);
-                    String etn = print(et, unit);
                     int len = u.getHomogeneousTupleLength(pt);
                     if (isPrimitiveAbbreviatedType(et)) {
-                        return etn + "[" + len + "]";
+                        appendNested(out, et, unit);
+                        out.append("[").append(Integer.toString(len)).append("]");
                     }
                     else {
-                        return "<" + etn + ">[" + len + "]";
+                        out.append("<");
+                        appendNested(out, et, unit);
+                        out.append(">[").append(Integer.toString(len)).append("]");
                     }
+                    return;
                 }
                 if (abbreviateSequential(pt)) {
                     Type it = u.getIteratedType(pt);
-                    String etn = print(it, unit);
                     if (isPrimitiveAbbreviatedType(it)) {
-                        return etn + "[]";
+                        appendNested(out, it, unit);
+                        out.append("[]");
                     }
                     else {
-                        return lt() + etn + gt() + "[]";
+                        out.append(lt());
+                        appendNested(out, it, unit);
+                        out.append(gt()).append("[]");
                     }
+                    return;
                 }
                 if (abbreviateSequence(pt)) {
                     Type it = u.getIteratedType(pt);
-                    String etn = print(it, unit);
                     if (isPrimitiveAbbreviatedType(it) || 
                             it.isUnion() || 
                             it.isIntersection()) {
-                        return "[" + etn + "+]";
+                        out.append("[");
+                        appendNested(out, it, unit);
+                        out.append("+]");
                     }
                     else {
-                        return "[" + lt() + etn + gt() + "+]";
+                        out.append("[").append(lt());
+                        appendNested(out, it, unit);
+                        out.append(gt()).append("+]");
                     }
+                    return;
                 }
                 if (abbreviateIterable(pt)) {
                     Type it = u.getIteratedType(pt);
@@ -167,63 +270,72 @@ public class TypePrinter {
                     /*if (it.isNothing() && !nt.isNothing()) {
                     	return "{}";
                     }*/
-                    String itn = print(it, unit);
                     String many = nt.isNothing() ? "+" : "*";
                     if (isPrimitiveAbbreviatedType(it) || 
                             it.isUnion() || 
                             it.isIntersection()) {
-                        return "{" + itn + many + "}";
+                        out.append("{");
+                        appendNested(out, it, unit);
+                        out.append(many).append("}");
                     }
                     else {
-                        return "{" + lt() + itn + gt() + many + "}";
+                        out.append("{").append(lt());
+                        appendNested(out, it, unit);
+                        out.append(gt()).append(many).append("}");
                     }
+                    return;
                 }
                 if (abbreviateEntry(pt)) {
                     Type kt = u.getKeyType(pt);
                     Type vt = u.getValueType(pt);
-                    return print(kt, unit) + 
-                            "-" + gt()
-                            + print(vt, unit);
+                    appendNested(out, kt, unit);
+                    out.append("-").append(gt());
+                    appendNested(out, vt, unit);
+                    return;
                 }
                 if (abbreviateCallable(pt)) {
                     List<Type> tal = pt.getTypeArgumentList();
                     Type rt = tal.get(0);
                     Type at = tal.get(1);
                     if (abbreviateCallableArg(at)) {
-                        String paramTypes = 
-                                getTupleElementTypeNames(at, unit);
-                        if (rt!=null && paramTypes!=null) {
-                            String rtn = print(rt, unit);
-                            if (!isPrimitiveAbbreviatedType(rt)) {
-                                rtn = lt() + rtn + gt();
+                        if (rt!=null) {
+                            //the argument types might not 
+                            //be abbreviated after all
+                            StringBuilder args = 
+                                    new StringBuilder();
+                            if (appendTupleElementTypes(args, at, unit)) {
+                                appendWrapped(out, rt, unit);
+                                out.append("(")
+                                    .append(args)
+                                    .append(")");
+                                return;
                             }
-                            return rtn + "(" + paramTypes + ")";
                         }
                     }
                     else {
                         if (rt!=null && at!=null) {
-                            String rtn = print(rt, unit);
-                            String atn = print(at, unit);
-                            if (!isPrimitiveAbbreviatedType(at)) {
-                                atn = lt() + atn + gt();
-                            }
-                            if (!isPrimitiveAbbreviatedType(rt)) {
-                                rtn = lt() + rtn + gt();
-                            }
-                            return rtn + "(*" + atn + ")";
+                            appendWrapped(out, rt, unit);
+                            out.append("(*");
+                            appendWrapped(out, at, unit);
+                            out.append(")");
+                            return;
                         }
                     }
                 }
                 if (abbreviateTuple(pt)) {
-                    String elemTypes = 
-                            getTupleElementTypeNames(pt, unit);
-                    if (elemTypes!=null) {
-                        return "[" + elemTypes + "]";
+                    //the element types might not be 
+                    //abbreviated after all
+                    StringBuilder elements = 
+                            new StringBuilder();
+                    if (appendTupleElementTypes(elements, pt, unit)) {
+                        out.append("[")
+                            .append(elements)
+                            .append("]");
+                        return;
                     }
                 }
             }
             if (pt.isUnion()) {
-                StringBuilder name = new StringBuilder();
                 boolean first = true;
                 for (Type caseType: 
                         pt.getCaseTypes()) {
@@ -231,25 +343,23 @@ public class TypePrinter {
                         first = false;
                     }
                     else {
-                        name.append("|");
+                        out.append("|");
                     }
                     if (caseType==null) {
-                        name.append("unknown");
+                        out.append("unknown");
                     }
                     else if (printAbbreviated() && 
                             abbreviateEntry(caseType)) {
-                        name.append(lt())
-                            .append(print(caseType, unit))
-                            .append(gt());
+                        out.append(lt());
+                        appendNested(out, caseType, unit);
+                        out.append(gt());
                     }
                     else {
-                        name.append(print(caseType, unit));
+                        appendNested(out, caseType, unit);
                     }
                 }
-                return name.toString();
             }
             else if (pt.isIntersection()) {
-                StringBuilder name = new StringBuilder();
                 boolean first = true;
                 for (Type satisfiedType: 
                         pt.getSatisfiedTypes()) {
@@ -257,100 +367,115 @@ public class TypePrinter {
                         first = false;
                     }
                     else {
-                        name.append(amp());
+                        out.append(amp());
                     }
                     if (satisfiedType==null) {
-                        name.append("unknown");
+                        out.append("unknown");
                     }
                     else if (printAbbreviated() && 
                             abbreviateEntry(satisfiedType) || 
                             satisfiedType.isUnion()) {
-                        name.append(lt())
-                            .append(print(satisfiedType, unit))
-                            .append(gt());
+                        out.append(lt());
+                        appendNested(out, satisfiedType, unit);
+                        out.append(gt());
                     }
                     else {
-                        name.append(print(satisfiedType, unit));
+                        appendNested(out, satisfiedType, unit);
                     }
                 }
-                return name.toString();
             }
             else if (pt.isTypeParameter()) {
-                StringBuilder name = new StringBuilder();
                 TypeParameter tp = 
                         (TypeParameter) 
                             pt.getDeclaration();
 
                 if (printTypeParameterDetail() && 
                         tp.isContravariant()) {
-                    name.append("in ");
+                    out.append("in ");
                 }
                 if (printTypeParameterDetail() && 
                         tp.isCovariant()) {
-                    name.append("out ");
+                    out.append("out ");
                 }
 
-                name.append(getSimpleProducedTypeName(pt, unit));
+                out.append(getSimpleProducedTypeName(pt, unit));
 
                 if (printTypeParameterDetail() && 
                         tp.isDefaulted()) {
                     Type dta = tp.getDefaultTypeArgument();
                     if (dta == null) {
-                        name.append("=");
+                        out.append("=");
                     }
                     else {
-                        name.append(" = ")
-                            .append(print(dta, unit));
+                        out.append(" = ");
+                        appendNested(out, dta, unit);
                     }
                 }
-
-                return name.toString();
             }
             else {
                 TypeDeclaration declaration = 
                         pt.getDeclaration();
                 if (declaration.isAlias() && 
                         declaration.isAnonymous()) {
-                    StringBuilder name = new StringBuilder();
                     if (pt.isTypeConstructor()) {
-                        name.append(lt());
+                        out.append(lt());
                         TypeParameter tpc = 
                                 pt.getTypeConstructorParameter();
                         List<TypeParameter> params = 
                                 (tpc==null ? declaration : tpc)
                                     .getTypeParameters();
+                        boolean first = true;
                         for (TypeParameter tp: params) {
-                            if (name.length()>lt().length()) {
-                                name.append(", ");
+                            if (first) {
+                                first = false;
+                            }
+                            else {
+                                out.append(", ");
                             }
                             if (tp.isCovariant()) {
-                                name.append("out ");
+                                out.append("out ");
                             }
                             if (tp.isContravariant()) {
-                                name.append("in ");
+                                out.append("in ");
                             }
-                            printDeclaration(name, tp, 
+                            printDeclaration(out, tp, 
                                     printFullyQualified(), 
                                     unit);
                         }
-                        name.append(gt());
-                        appendConstraintsString(pt, name, unit);
-                        name.append(" =")
+                        out.append(gt());
+                        appendConstraintsString(pt, out, unit);
+                        out.append(" =")
                             .append(gt())
                             .append(" ");
                     }
                     Type aliasedType =
                             declaration.getExtendedType()
                             .substitute(pt);
-                    name.append(print(aliasedType, unit));
-                    return name.toString();
+                    appendNested(out, aliasedType, unit);
                 }
                 else {            
-                    return getSimpleProducedTypeName(pt, unit);
+                    out.append(getSimpleProducedTypeName(pt, unit));
                 }
             }
         }
     }
+    
+    /**
+     * Print the given type, enclosed in angle brackets 
+     * unless it has a primitive abbreviation.
+     */
+    private void appendWrapped(Appendable out, Type pt, 
+            Unit unit) 
+            throws IOException {
+        if (isPrimitiveAbbreviatedType(pt)) {
+            appendNested(out, pt, unit);
+        }
+        else {
+            out.append(lt());
+            appendNested(out, pt, unit);
+            out.append(gt());
+        }
+    }
 
     private boolean abbreviateHomoTuple(Type pt) {
         if (pt.isTuple()) {
@@ -491,8 +616,15 @@ public class TypePrinter {
         }
     }
 
-    private String getTupleElementTypeNames(Type args, 
-            Unit unit) {
+    /**
+     * Print the element types of the given tuple type, 
+     * separated by commas, returning false if the tuple 
+     * type can't be abbreviated, in which case some of 
+     * them might have been printed anyway.
+     */
+    private boolean appendTupleElementTypes(Appendable out,
+            Type args, Unit unit) 
+            throws IOException {
         if (args!=null) {
             Unit u = args.getDeclaration().getUnit();
             boolean defaulted=false;
@@ -519,53 +651,44 @@ public class TypePrinter {
                         Type first = tal.get(1);
                         Type rest = tal.get(2);
                         if (first!=null && rest!=null) {
-                            String argtype = 
-                                    print(first, unit);
+                            appendNested(out, first, unit);
                             if (rest.isEmpty()) {
-                                return defaulted ? 
-                                        argtype + "=" : argtype;
-                            }
-                            String argtypes = 
-                                    getTupleElementTypeNames(
-                                            rest, unit);
-                            if (argtypes!=null) {
-                                return defaulted ? 
-                                        argtype + "=, " + argtypes : 
-                                        argtype + ", " + argtypes;
+                                if (defaulted) {
+                                    out.append("=");
+                                }
+                                return true;
                             }
+                            out.append(defaulted ? "=, " : ", ");
+                            return appendTupleElementTypes(out, 
+                                    rest, unit);
                         }
                     }
                 }
                 else if (args.isEmpty()) {
-                    return defaulted ? "=" : "";
+                    if (defaulted) {
+                        out.append("=");
+                    }
+                    return true;
                 }
                 else if (!defaulted && args.isSequential()) {
                     Type elementType = u.getIteratedType(args);
                     if (elementType!=null) {
-                        String elemtype = print(elementType, unit);
-                        if (isPrimitiveAbbreviatedType(elementType)) {
-                            return elemtype + "*";
-                        }
-                        else {
-                            return lt() + elemtype + gt() + "*";
-                        }
+                        appendWrapped(out, elementType, unit);
+                        out.append("*");
+                        return true;
                     }
                 }
                 else if (!defaulted && args.isSequence()) {
                     Type elementType = u.getIteratedType(args);
                     if (elementType!=null) {
-                        String elemtype = print(elementType, unit);
-                        if (isPrimitiveAbbreviatedType(elementType)) {
-                            return elemtype + "+";
-                        }
-                        else {
-                            return lt() + elemtype + gt() + "+";
-                        }
+                        appendWrapped(out, elementType, unit);
+                        out.append("+");
+                        return true;
                     }
                 }
             }
         }
-        return null;
+        return false;
     }
 
     private boolean isPrimitiveAbbreviatedType(Type pt) {
@@ -583,6 +706,19 @@ public class TypePrinter {
     protected String getSimpleProducedTypeName(Type pt, 
             Unit unit) {
         StringBuilder ptn = new StringBuilder();
+        try {
+            appendSimpleProducedTypeName(ptn, pt, unit);
+        }
+        catch (IOException e) {
+            //can't happen with a StringBuilder
+            throw new RuntimeException(e);
+        }
+        return ptn.toString();
+    }
+    
+    private void appendSimpleProducedTypeName(Appendable ptn, 
+            Type pt, Unit unit) 
+            throws IOException {
 
         boolean fullyQualified = printFullyQualified();
         if (printQualifyingType()) {
@@ -595,7 +731,7 @@ public class TypePrinter {
                 if (isComplex) {
 					ptn.append(lt());
 	            }
-                ptn.append(print(qt, unit));
+                appendNested(ptn, qt, unit);
     			if (isComplex) {
 					ptn.append(gt());
 	            }
@@ -637,17 +773,17 @@ public class TypePrinter {
                             pt.isContravariant(p)) {
                         ptn.append("in ");
                     }
-                    ptn.append(print(t, unit));
+                    appendNested(ptn, t, unit);
                 }
             }
             ptn.append(gt());
         }
-        return ptn.toString();
     }
 
-    private void printDeclaration(StringBuilder ptn, 
+    private void printDeclaration(Appendable ptn, 
             Declaration declaration, boolean fullyQualified, 
-            Unit unit) {
+            Unit unit) 
+            throws IOException {
         // type parameters are not fully qualified
         if (fullyQualified && 
                 !(declaration instanceof TypeParameter)) {
@@ -694,7 +830,8 @@ public class TypePrinter {
     }
 
     private void appendConstraintsString(Type pt,
-            StringBuilder result, Unit unit) {
+            Appendable result, Unit unit) 
+            throws IOException {
         TypeParameter tpc = 
                 pt.getTypeConstructorParameter();
         List<TypeParameter> params = 
@@ -722,7 +859,7 @@ public class TypePrinter {
                         else {
                             result.append("|");
                         }
-                        result.append(print(ct,unit));
+                        appendNested(result, ct, unit);
                     }
                 }
                 if (hasUpperBounds) {
@@ -735,7 +872,7 @@ public class TypePrinter {
                         else {
                             result.append(amp());
                         }
-                        result.append(print(st,unit));
+                        appendNested(result, st, unit);
                     }
                 }
             }